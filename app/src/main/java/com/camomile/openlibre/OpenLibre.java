@@ -10,16 +10,29 @@ import android.util.Log;
 
 import com.android.volley.RequestQueue;
 import com.android.volley.toolbox.Volley;
+import com.camomile.openlibre.model.GlucoseStatistics;
 import com.camomile.openlibre.model.ProcessedDataModule;
 import com.camomile.openlibre.model.RawDataModule;
 import com.camomile.openlibre.model.RawTagData;
 import com.camomile.openlibre.model.ReadingData;
+import com.camomile.openlibre.model.SensorMerge;
+import com.camomile.openlibre.model.TrendSmoother;
 import com.camomile.openlibre.model.UserDataModule;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
 
 import com.camomile.openlibre.model.db.UserProfile;
+import com.camomile.openlibre.model.prediction.PredictorRegistry;
+import com.camomile.openlibre.service.CloudStoreSynchronization;
+import com.camomile.openlibre.service.GlucoseAlarmEngine;
+import com.camomile.openlibre.service.GlucoseAlarmNotifier;
+import com.camomile.openlibre.service.IngestWriter;
+import com.camomile.openlibre.service.PushMessageSubscriber;
+import com.camomile.openlibre.service.ReadingIngestTask;
+import com.camomile.openlibre.service.ReadingSnapshot;
+import com.camomile.openlibre.service.ReadingStream;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 import com.google.android.gms.tasks.OnCompleteListener;
@@ -43,9 +56,23 @@ public class OpenLibre extends Application {
 
     // settings_
     public static boolean NFC_USE_MULTI_BLOCK_READ = true;
+    public static boolean NFC_USE_DELTA_READ = true;
+    public static boolean NFC_AUTO_TUNE_READ_SIZE = true;
     public static boolean GLUCOSE_UNIT_IS_MMOL = false;
     public static float GLUCOSE_TARGET_MIN = 80;
     public static float GLUCOSE_TARGET_MAX = 140;
+    public static PredictorRegistry.Model PREDICTION_MODEL = PredictorRegistry.Model.LINEAR;
+    public static int PREDICTION_MINUTES = 15;
+    public static TrendSmoother.Filter TREND_SMOOTHING = TrendSmoother.Filter.SAVITZKY_GOLAY;
+    public static boolean SHOW_SMOOTHED_TREND = false;
+    public static SensorMerge.Preference SENSOR_OVERLAP_PREFERENCE = SensorMerge.Preference.NEWEST;
+    public static boolean ALARMS_ENABLED = false;
+    public static float ALARM_URGENT_LOW = 55;
+    public static float ALARM_LOW = 70;
+    public static float ALARM_HIGH = 180;
+    public static float ALARM_RATE_OF_CHANGE = 2; // per minute
+    public static int ALARM_SNOOZE_MINUTES = 30;
+    public static boolean ALARM_PUSH_TO_FOLLOWERS = false;
 
     // realm db
     public static RealmConfiguration realmConfigRawData;
@@ -76,7 +103,21 @@ public class OpenLibre extends Application {
 
         setupRealm(getApplicationContext());
 
-        parseRawData();
+        // compacting large files takes too long for the GUI thread, so the files are compacted first thing
+        // on the writer thread, followed by parsing the raw data again if needed
+        final Context context = getApplicationContext();
+        IngestWriter.getInstance().submitTask(new Callable<Void>() {
+            @Override
+            public Void call() {
+                RealmCompaction.compactIfDue(context);
+                parseRawData();
+                return null;
+            }
+        });
+
+        CloudStoreSynchronization.getInstance().subscribeToReadings(this);
+        ReadingStream.getInstance().subscribe(new PushMessageSubscriber(), ReadingStream.Delivery.MAIN_THREAD, 4);
+        GlucoseAlarmEngine.getInstance().subscribeToReadings(new GlucoseAlarmNotifier(this));
 
         firestore = FirebaseFirestore.getInstance();
         usersCollection = firestore.collection("users");
@@ -141,9 +182,23 @@ public class OpenLibre extends Application {
     public static void refreshApplicationSettings(SharedPreferences settings) {
         // read settings values
         NFC_USE_MULTI_BLOCK_READ = settings.getBoolean("pref_nfc_use_multi_block_read", NFC_USE_MULTI_BLOCK_READ);
+        NFC_USE_DELTA_READ = settings.getBoolean("pref_nfc_use_delta_read", NFC_USE_DELTA_READ);
+        NFC_AUTO_TUNE_READ_SIZE = settings.getBoolean("pref_nfc_auto_tune_read_size", NFC_AUTO_TUNE_READ_SIZE);
         GLUCOSE_UNIT_IS_MMOL = settings.getBoolean("pref_glucose_unit_is_mmol", GLUCOSE_UNIT_IS_MMOL);
         GLUCOSE_TARGET_MIN = Float.parseFloat(settings.getString("pref_glucose_target_min", Float.toString(GLUCOSE_TARGET_MIN)));
         GLUCOSE_TARGET_MAX = Float.parseFloat(settings.getString("pref_glucose_target_max", Float.toString(GLUCOSE_TARGET_MAX)));
+        PREDICTION_MODEL = PredictorRegistry.Model.fromPreference(settings.getString("pref_prediction_model", PREDICTION_MODEL.name()));
+        PREDICTION_MINUTES = Integer.parseInt(settings.getString("pref_prediction_minutes", Integer.toString(PREDICTION_MINUTES)));
+        TREND_SMOOTHING = TrendSmoother.Filter.fromPreference(settings.getString("pref_trend_smoothing", TREND_SMOOTHING.name()));
+        SHOW_SMOOTHED_TREND = settings.getBoolean("pref_show_smoothed_trend", SHOW_SMOOTHED_TREND);
+        SENSOR_OVERLAP_PREFERENCE = SensorMerge.Preference.fromPreference(settings.getString("pref_sensor_overlap_preference", SENSOR_OVERLAP_PREFERENCE.name()));
+        ALARMS_ENABLED = settings.getBoolean("pref_alarms_enabled", ALARMS_ENABLED);
+        ALARM_URGENT_LOW = Float.parseFloat(settings.getString("pref_alarm_urgent_low", Float.toString(ALARM_URGENT_LOW)));
+        ALARM_LOW = Float.parseFloat(settings.getString("pref_alarm_low", Float.toString(ALARM_LOW)));
+        ALARM_HIGH = Float.parseFloat(settings.getString("pref_alarm_high", Float.toString(ALARM_HIGH)));
+        ALARM_RATE_OF_CHANGE = Float.parseFloat(settings.getString("pref_alarm_rate_of_change", Float.toString(ALARM_RATE_OF_CHANGE)));
+        ALARM_SNOOZE_MINUTES = Integer.parseInt(settings.getString("pref_alarm_snooze_minutes", Integer.toString(ALARM_SNOOZE_MINUTES)));
+        ALARM_PUSH_TO_FOLLOWERS = settings.getBoolean("pref_alarm_push_to_followers", ALARM_PUSH_TO_FOLLOWERS);
     }
 
     public static void setupRealm(Context context) {
@@ -207,7 +262,7 @@ public class OpenLibre extends Application {
                 .modules(new ProcessedDataModule())
                 .directory(openLibreDataPath)
                 .name("data_processed.realm")
-                .schemaVersion(2)
+                .schemaVersion(14)
                 // delete processed data realm, if data structure changed
                 // it will just be parsed again from the raw data
                 .deleteRealmIfMigrationNeeded()
@@ -215,28 +270,55 @@ public class OpenLibre extends Application {
     }
 
     static void parseRawData() {
-        Realm realmRawData = Realm.getInstance(realmConfigRawData);
-        Realm realmProcessedData = Realm.getInstance(realmConfigProcessedData);
+        Realm realmRawData = RealmProvider.acquire(realmConfigRawData);
+        Realm realmProcessedData = RealmProvider.acquire(realmConfigProcessedData);
 
         // if processed data realm is empty
         if (realmProcessedData.isEmpty() && !realmRawData.isEmpty()) {
             // parse data from raw realm into processed data realm
             Log.i(LOG_ID, "Parsing data raw_data realm to processed_data realm.");
             realmProcessedData.beginTransaction();
-            for (RawTagData rawTagData : realmRawData.where(RawTagData.class)
-                            .sort(RawTagData.DATE, Sort.ASCENDING).findAll()) {
-                realmProcessedData.copyToRealmOrUpdate(new ReadingData(rawTagData));
-            }
+            storeRawData(realmRawData, realmProcessedData);
             realmProcessedData.commitTransaction();
+            ReadingIngestTask.publishLatest(realmProcessedData, ReadingSnapshot.Source.IMPORT);
         }
 
-        realmProcessedData.close();
-        realmRawData.close();
+        RealmProvider.release(realmConfigProcessedData);
+        RealmProvider.release(realmConfigRawData);
+    }
+
+    // replaces all processed data by parsing the raw data again, has to run on the IngestWriter
+    // the file is not deleted, as other threads can hold instances of it
+    public static void reparseRawData() {
+        Realm realmRawData = RealmProvider.acquire(realmConfigRawData);
+        Realm realmProcessedData = RealmProvider.acquire(realmConfigProcessedData);
+
+        Log.i(LOG_ID, "Reparsing data raw_data realm to processed_data realm.");
+        realmProcessedData.beginTransaction();
+        try {
+            realmProcessedData.deleteAll();
+            storeRawData(realmRawData, realmProcessedData);
+            realmProcessedData.commitTransaction();
+            ReadingIngestTask.publishLatest(realmProcessedData, ReadingSnapshot.Source.IMPORT);
+        } finally {
+            if (realmProcessedData.isInTransaction()) {
+                realmProcessedData.cancelTransaction();
+            }
+            RealmProvider.release(realmConfigProcessedData);
+            RealmProvider.release(realmConfigRawData);
+        }
+    }
+
+    private static void storeRawData(Realm realmRawData, Realm realmProcessedData) {
+        for (RawTagData rawTagData : realmRawData.where(RawTagData.class)
+                        .sort(RawTagData.DATE, Sort.ASCENDING).findAll()) {
+            GlucoseStatistics.storeReading(realmProcessedData, new ReadingData(rawTagData));
+        }
     }
 
     public static void clearRealmData(Context application){
-        Realm realmRawData = Realm.getInstance(realmConfigRawData);
-        Realm realmProcessedData = Realm.getInstance(realmConfigProcessedData);
+        Realm realmRawData = RealmProvider.acquire(realmConfigRawData);
+        Realm realmProcessedData = RealmProvider.acquire(realmConfigProcessedData);
 
         realmRawData.beginTransaction();
         realmRawData.deleteAll();
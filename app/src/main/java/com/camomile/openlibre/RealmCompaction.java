@@ -0,0 +1,133 @@
+package com.camomile.openlibre;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.os.BatteryManager;
+import android.os.SystemClock;
+import android.text.format.DateFormat;
+import android.text.format.Formatter;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+
+import static android.content.Context.MODE_PRIVATE;
+import static com.camomile.openlibre.OpenLibre.realmConfigProcessedData;
+import static com.camomile.openlibre.OpenLibre.realmConfigRawData;
+import static com.camomile.openlibre.OpenLibre.realmConfigUserData;
+
+// Realm files only grow, the space of deleted and overwritten objects is reused but never returned,
+// so the files are compacted from time to time when the app starts while the phone is charging,
+// on the writer thread before it opens any instance. Files the GUI opened meanwhile are skipped and
+// compacted on the next start, the interval only counts from a run that compacted a file.
+// Realm compacts under its global cache lock, so a GUI thread opening any Realm during the run waits
+// until the file being compacted is done, at most once a week and only while charging.
+// Sizes and duration of the last run are kept for the developer settings.
+public class RealmCompaction {
+    private static final String LOG_ID = "OpenLibre::" + RealmCompaction.class.getSimpleName();
+    private static final String PREFERENCES_NAME = "realm_compaction";
+    private static final String LAST_COMPACTION_DATE = "last_compaction_date";
+    private static final long compactionInterval = TimeUnit.DAYS.toMillis(7);
+
+    private enum Result {
+        COMPACTED,
+        SKIPPED_IN_USE,
+        FAILED
+    }
+
+    // has to be called after OpenLibre.setupRealm(), not on the GUI thread
+    static void compactIfDue(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE);
+        long lastCompactionDate = preferences.getLong(LAST_COMPACTION_DATE, 0);
+        if (System.currentTimeMillis() - lastCompactionDate < compactionInterval || !isCharging(context)) {
+            return;
+        }
+        compactAll(context);
+    }
+
+    private static void compactAll(Context context) {
+        SharedPreferences.Editor editor = context.getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE).edit();
+        boolean compacted = false;
+        for (RealmConfiguration config : new RealmConfiguration[] {realmConfigRawData, realmConfigProcessedData, realmConfigUserData}) {
+            compacted |= compact(config, editor) == Result.COMPACTED;
+        }
+        if (compacted) {
+            editor.putLong(LAST_COMPACTION_DATE, System.currentTimeMillis());
+        }
+        editor.apply();
+    }
+
+    // returns null, if the file does not exist
+    private static Result compact(RealmConfiguration config, SharedPreferences.Editor editor) {
+        File file = new File(config.getPath());
+        if (!file.exists()) {
+            return null;
+        }
+        String name = config.getRealmFileName();
+        long sizeBefore = file.length();
+        long startTime = SystemClock.elapsedRealtime();
+        Result result;
+        // compactRealm() fails for open files as well, the count just tells both cases apart
+        if (Realm.getGlobalInstanceCount(config) > 0) {
+            result = Result.SKIPPED_IN_USE;
+        } else {
+            try {
+                result = Realm.compactRealm(config) ? Result.COMPACTED : Result.FAILED;
+            } catch (RuntimeException e) {
+                Log.e(LOG_ID, "Compacting " + name + " failed: " + e.toString());
+                result = Result.FAILED;
+            }
+        }
+        long duration = SystemClock.elapsedRealtime() - startTime;
+        long sizeAfter = file.length();
+        Log.i(LOG_ID, name + " " + result + ": " + sizeBefore + " -> " + sizeAfter + " bytes in " + duration + " ms");
+
+        editor.putString(name + "_result", result.name());
+        editor.putLong(name + "_size_before", sizeBefore);
+        editor.putLong(name + "_size_after", sizeAfter);
+        editor.putLong(name + "_duration", duration);
+        return result;
+    }
+
+    private static boolean isCharging(Context context) {
+        // sticky broadcast, no receiver is registered
+        Intent batteryStatus = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return batteryStatus != null && batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    // results of the last run, one line per Realm file
+    public static String format(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE);
+        long lastCompactionDate = preferences.getLong(LAST_COMPACTION_DATE, 0);
+        if (lastCompactionDate == 0) {
+            return context.getString(R.string.pref_realm_compaction_never);
+        }
+        StringBuilder text = new StringBuilder();
+        text.append(DateFormat.getDateFormat(context).format(new Date(lastCompactionDate)))
+                .append(" ")
+                .append(DateFormat.getTimeFormat(context).format(new Date(lastCompactionDate)));
+        for (RealmConfiguration config : new RealmConfiguration[] {realmConfigRawData, realmConfigProcessedData, realmConfigUserData}) {
+            String name = config.getRealmFileName();
+            String result = preferences.getString(name + "_result", null);
+            if (result == null) {
+                continue;
+            }
+            text.append("\n").append(context.getString(R.string.pref_realm_compaction_result,
+                    name,
+                    Formatter.formatShortFileSize(context, preferences.getLong(name + "_size_before", 0)),
+                    Formatter.formatShortFileSize(context, preferences.getLong(name + "_size_after", 0)),
+                    preferences.getLong(name + "_duration", 0)));
+            if (!result.equals(Result.COMPACTED.name())) {
+                text.append(" (").append(result.toLowerCase(Locale.US).replace('_', ' ')).append(")");
+            }
+        }
+        return text.toString();
+    }
+}
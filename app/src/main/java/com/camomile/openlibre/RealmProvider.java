@@ -0,0 +1,73 @@
+package com.camomile.openlibre;
+
+import android.util.Log;
+
+import java.util.HashMap;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+
+// one Realm instance per thread and configuration, shared by all code running on that thread
+// acquire() and release() have to be balanced, the instance stays open as long as one caller holds it,
+// so a component that holds it for its whole lifecycle makes every nested acquire() a map lookup
+// instead of opening and closing the Realm file again
+public class RealmProvider {
+    private static final String LOG_ID = "OpenLibre::" + RealmProvider.class.getSimpleName();
+
+    private static class Holder {
+        private final Realm realm;
+        private int count = 0;
+
+        private Holder(Realm realm) {
+            this.realm = realm;
+        }
+    }
+
+    private static final ThreadLocal<HashMap<RealmConfiguration, Holder>> holders =
+            new ThreadLocal<HashMap<RealmConfiguration, Holder>>() {
+                @Override
+                protected HashMap<RealmConfiguration, Holder> initialValue() {
+                    return new HashMap<>();
+                }
+            };
+
+    public static Realm acquire(RealmConfiguration configuration) {
+        HashMap<RealmConfiguration, Holder> threadHolders = holders.get();
+        Holder holder = threadHolders.get(configuration);
+        if (holder == null || holder.realm.isClosed()) {
+            holder = new Holder(Realm.getInstance(configuration));
+            threadHolders.put(configuration, holder);
+        }
+        holder.count++;
+        return holder.realm;
+    }
+
+    public static void release(RealmConfiguration configuration) {
+        HashMap<RealmConfiguration, Holder> threadHolders = holders.get();
+        Holder holder = threadHolders.get(configuration);
+        if (holder == null) {
+            Log.w(LOG_ID, configuration.getRealmFileName() + " released without being acquired on this thread");
+            return;
+        }
+        holder.count--;
+        if (holder.count == 0) {
+            threadHolders.remove(configuration);
+            if (!holder.realm.isClosed()) {
+                holder.realm.close();
+            }
+        }
+    }
+
+    // has to be called when a worker thread ends, closes the instances that were never released
+    public static void releaseAll() {
+        HashMap<RealmConfiguration, Holder> threadHolders = holders.get();
+        for (Holder holder : threadHolders.values()) {
+            Log.w(LOG_ID, holder.realm.getConfiguration().getRealmFileName() + " was not released "
+                    + holder.count + " times on " + Thread.currentThread().getName());
+            if (!holder.realm.isClosed()) {
+                holder.realm.close();
+            }
+        }
+        threadHolders.clear();
+    }
+}
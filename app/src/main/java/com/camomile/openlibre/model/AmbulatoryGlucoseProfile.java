@@ -0,0 +1,155 @@
+package com.camomile.openlibre.model;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+
+// percentiles of the glucose values by time of day over any range of days, like the AGP report
+// every history value is added to a quantile sketch of its 15 minute bucket, once for its day and once for
+// its block of seven days, so 90 days are merged from 13 week rows and a few day rows
+// values of deleted readings stay in the sketches until the raw data is parsed again
+public class AmbulatoryGlucoseProfile {
+    public static final int numBuckets = 96;
+    public static final double[] percentiles = {0.05, 0.25, 0.5, 0.75, 0.95};
+
+    public static final int bucketInMinutes = 24 * 60 / numBuckets;
+
+    private static final int daysPerWeek = 7;
+
+    private final Realm realm;
+    private final Map<String, QuantileSketch[]> changedPeriods = new HashMap<>();
+
+    // collects the new values of one reading, so every touched row is read and written only once
+    AmbulatoryGlucoseProfile(Realm realm) {
+        this.realm = realm;
+    }
+
+    void add(GlucoseData glucoseData) {
+        long localTime = GlucoseStatistics.getLocalTimeInMillis(glucoseData);
+        int day = GlucoseStatistics.getDay(localTime);
+        int bucket = getBucket(localTime);
+        float value = glucoseData.getGlucoseLevelRaw();
+        getChangedSketches(GlucoseProfilePeriod.generateDayId(day))[bucket].add(value);
+        getChangedSketches(GlucoseProfilePeriod.generateWeekId(day / daysPerWeek))[bucket].add(value);
+    }
+
+    static int getBucket(long localTimeInMillis) {
+        int day = GlucoseStatistics.getDay(localTimeInMillis);
+        return (int) ((localTimeInMillis - TimeUnit.DAYS.toMillis(day)) / TimeUnit.MINUTES.toMillis(bucketInMinutes));
+    }
+
+    // sketches cannot remove a value, so the periods of values that were dated again are built anew
+    // from the history values of the timeline, has to be called inside a transaction
+    static void rebuild(Realm realm, Set<Integer> days) {
+        Set<Integer> weeks = new HashSet<>();
+        for (int day : days) {
+            storeSketches(realm, GlucoseProfilePeriod.generateDayId(day), collectSketches(realm, day, day));
+            weeks.add(day / daysPerWeek);
+        }
+        for (int week : weeks) {
+            storeSketches(realm, GlucoseProfilePeriod.generateWeekId(week),
+                    collectSketches(realm, week * daysPerWeek, (week + 1) * daysPerWeek - 1));
+        }
+    }
+
+    private static QuantileSketch[] collectSketches(Realm realm, int firstDay, int lastDay) {
+        QuantileSketch[] sketches = readSketches(null);
+        // the days are local, so the dates are searched with a margin of one day for the time zone
+        for (TimelinePoint point : realm.where(TimelinePoint.class)
+                .equalTo(TimelinePoint.IS_TREND_DATA, false)
+                .between(TimelinePoint.DATE, TimeUnit.DAYS.toMillis(firstDay - 1), TimeUnit.DAYS.toMillis(lastDay + 2))
+                .findAll()) {
+            long localTime = GlucoseStatistics.getLocalTimeInMillis(point.getGlucoseData());
+            int day = GlucoseStatistics.getDay(localTime);
+            if (day >= firstDay && day <= lastDay) {
+                sketches[getBucket(localTime)].add(point.getGlucoseData().getGlucoseLevelRaw());
+            }
+        }
+        return sketches;
+    }
+
+    // has to be called inside a transaction
+    void store() {
+        for (Map.Entry<String, QuantileSketch[]> entry : changedPeriods.entrySet()) {
+            storeSketches(realm, entry.getKey(), entry.getValue());
+        }
+        changedPeriods.clear();
+    }
+
+    private static void storeSketches(Realm realm, String id, QuantileSketch[] sketches) {
+        GlucoseProfilePeriod period = realm.where(GlucoseProfilePeriod.class)
+                .equalTo(GlucoseProfilePeriod.ID, id).findFirst();
+        if (period == null) {
+            period = realm.copyToRealm(new GlucoseProfilePeriod(id));
+        }
+        period.setSketches(writeSketches(sketches));
+    }
+
+    private QuantileSketch[] getChangedSketches(String id) {
+        QuantileSketch[] sketches = changedPeriods.get(id);
+        if (sketches == null) {
+            sketches = readSketches(realm.where(GlucoseProfilePeriod.class)
+                    .equalTo(GlucoseProfilePeriod.ID, id).findFirst());
+            changedPeriods.put(id, sketches);
+        }
+        return sketches;
+    }
+
+    // percentiles in mg/dl for every bucket of the local days firstDay to lastDay, NaN for buckets without values
+    public static float[][] getPercentiles(Realm realmProcessedData, int firstDay, int lastDay) {
+        QuantileSketch[] sketches = readSketches(null);
+        int day = firstDay;
+        while (day <= lastDay) {
+            GlucoseProfilePeriod period;
+            if (day % daysPerWeek == 0 && day + daysPerWeek - 1 <= lastDay) {
+                period = realmProcessedData.where(GlucoseProfilePeriod.class)
+                        .equalTo(GlucoseProfilePeriod.ID, GlucoseProfilePeriod.generateWeekId(day / daysPerWeek)).findFirst();
+                day += daysPerWeek;
+            } else {
+                period = realmProcessedData.where(GlucoseProfilePeriod.class)
+                        .equalTo(GlucoseProfilePeriod.ID, GlucoseProfilePeriod.generateDayId(day)).findFirst();
+                day++;
+            }
+            if (period != null) {
+                QuantileSketch[] periodSketches = readSketches(period);
+                for (int bucket = 0; bucket < numBuckets; bucket++) {
+                    sketches[bucket].merge(periodSketches[bucket]);
+                }
+            }
+        }
+
+        float[][] result = new float[percentiles.length][numBuckets];
+        for (int bucket = 0; bucket < numBuckets; bucket++) {
+            for (int i = 0; i < percentiles.length; i++) {
+                result[i][bucket] = sketches[bucket].quantile(percentiles[i]) / 10f;
+            }
+        }
+        return result;
+    }
+
+    private static QuantileSketch[] readSketches(GlucoseProfilePeriod period) {
+        QuantileSketch[] sketches = new QuantileSketch[numBuckets];
+        ByteBuffer buffer = period == null || period.getSketches() == null ? null : ByteBuffer.wrap(period.getSketches());
+        for (int bucket = 0; bucket < numBuckets; bucket++) {
+            sketches[bucket] = buffer == null ? new QuantileSketch() : QuantileSketch.readFrom(buffer);
+        }
+        return sketches;
+    }
+
+    private static byte[] writeSketches(QuantileSketch[] sketches) {
+        int size = 0;
+        for (QuantileSketch sketch : sketches) {
+            size += sketch.getSerializedSize();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (QuantileSketch sketch : sketches) {
+            sketch.writeTo(buffer);
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,104 @@
+package com.camomile.openlibre.model;
+
+import java.util.Locale;
+
+import io.realm.RealmObject;
+import io.realm.annotations.Index;
+import io.realm.annotations.PrimaryKey;
+
+// running sums of the glucose values of one sensor on one local day, see GlucoseStatistics
+public class DailyStatistics extends RealmObject {
+    public static final String ID = "id";
+    public static final String SENSOR_ID = "sensorId";
+    public static final String DAY = "day";
+
+    @PrimaryKey
+    private String id;
+    @Index
+    private String sensorId;
+    @Index
+    private int day = -1; // local days since 1970-01-01
+    private int count = 0;
+    private long sum = 0; // raw
+    private long sumOfSquares = 0; // raw^2
+    private int countVeryLow = 0;
+    private int countLow = 0;
+    private int countInRange = 0;
+    private int countHigh = 0;
+    private int countVeryHigh = 0;
+
+    public DailyStatistics() {}
+
+    DailyStatistics(String sensorId, int day) {
+        id = generateId(sensorId, day);
+        this.sensorId = sensorId;
+        this.day = day;
+    }
+
+    static String generateId(String sensorId, int day) {
+        return String.format(Locale.US, "%s_%05d", sensorId, day);
+    }
+
+    // sign is 1 to add the value and -1 to remove it again
+    void add(int glucoseLevelRaw, int sign) {
+        count += sign;
+        sum += sign * glucoseLevelRaw;
+        sumOfSquares += sign * (long) glucoseLevelRaw * glucoseLevelRaw;
+        switch (GlucoseStatistics.getRange(glucoseLevelRaw)) {
+            case VERY_LOW:
+                countVeryLow += sign;
+                break;
+            case LOW:
+                countLow += sign;
+                break;
+            case IN_RANGE:
+                countInRange += sign;
+                break;
+            case HIGH:
+                countHigh += sign;
+                break;
+            default:
+                countVeryHigh += sign;
+        }
+    }
+
+    public String getSensorId() {
+        return sensorId;
+    }
+
+    public int getDay() {
+        return day;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getSumOfSquares() {
+        return sumOfSquares;
+    }
+
+    public int getCountVeryLow() {
+        return countVeryLow;
+    }
+
+    public int getCountLow() {
+        return countLow;
+    }
+
+    public int getCountInRange() {
+        return countInRange;
+    }
+
+    public int getCountHigh() {
+        return countHigh;
+    }
+
+    public int getCountVeryHigh() {
+        return countVeryHigh;
+    }
+}
@@ -6,6 +6,7 @@ import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
 import io.realm.RealmObject;
+import io.realm.annotations.Index;
 import io.realm.annotations.PrimaryKey;
 
 import static com.camomile.openlibre.OpenLibre.GLUCOSE_UNIT_IS_MMOL;
@@ -13,45 +14,66 @@ import static com.camomile.openlibre.OpenLibre.GLUCOSE_UNIT_IS_MMOL;
 public class GlucoseData extends RealmObject implements Comparable<GlucoseData> {
     public static final String ID = "id";
     public static final String SENSOR = "sensor";
+    public static final String SENSOR_ID = "sensorId";
     public static final String AGE_IN_SENSOR_MINUTES = "ageInSensorMinutes";
     public static final String GLUCOSE_LEVEL_RAW = "glucoseLevelRaw";
+    public static final String GLUCOSE_LEVEL_SMOOTHED_RAW = "glucoseLevelSmoothedRaw";
     public static final String IS_TREND_DATA = "isTrendData";
     public static final String DATE = "date";
     public static final String TIMEZONE_OFFSET_IN_MINUTES = "timezoneOffsetInMinutes";
+    public static final String NUM_TREND_REFERENCES = "numTrendReferences";
 
     @PrimaryKey
     private String id;
     private SensorData sensor;
+    @Index
+    private String sensorId; // same as sensor.getId(), but indexed
     private boolean isTrendData = false;
     private int ageInSensorMinutes = -1;
     private int glucoseLevelRaw = -1; // in mg/l = 0.1 mg/dl
+    private int glucoseLevelSmoothedRaw = -1; // see TrendSmoother, same as glucoseLevelRaw for history data
+    @Index
     private long date;
     private int timezoneOffsetInMinutes;
+    private int numTrendReferences = 0; // readings with this value in their trend, see TrendReferences
 
     public GlucoseData() {}
     public GlucoseData(SensorData sensor, int ageInSensorMinutes, int timezoneOffsetInMinutes, int glucoseLevelRaw, boolean isTrendData, long date) {
         this.sensor = sensor;
+        sensorId = sensor.getId();
         this.ageInSensorMinutes = ageInSensorMinutes;
         this.timezoneOffsetInMinutes = timezoneOffsetInMinutes;
         this.glucoseLevelRaw = glucoseLevelRaw;
+        this.glucoseLevelSmoothedRaw = glucoseLevelRaw;
         this.isTrendData = isTrendData;
         this.date = date;
         id = generateId(sensor, ageInSensorMinutes, isTrendData, glucoseLevelRaw);
     }
+    // a trend value with its smoothed level, see generateTrendId
+    GlucoseData(SensorData sensor, int ageInSensorMinutes, int timezoneOffsetInMinutes, int glucoseLevelRaw, int glucoseLevelSmoothedRaw, long date) {
+        this(sensor, ageInSensorMinutes, timezoneOffsetInMinutes, glucoseLevelRaw, true, date);
+        this.glucoseLevelSmoothedRaw = glucoseLevelSmoothedRaw;
+        id = generateTrendId(sensor, ageInSensorMinutes, glucoseLevelRaw, glucoseLevelSmoothedRaw);
+    }
     public GlucoseData(SensorData sensor, int ageInSensorMinutes, int timezoneOffsetInMinutes, int glucoseLevelRaw, boolean isTrendData) {
         this(sensor, ageInSensorMinutes, timezoneOffsetInMinutes, glucoseLevelRaw, isTrendData, sensor.getStartDate() + TimeUnit.MINUTES.toMillis(ageInSensorMinutes));
     }
 
     public static String generateId(SensorData sensor, int ageInSensorMinutes, boolean isTrendData, int glucoseLevelRaw) {
         if (isTrendData) {
-            // a trend data value for a specific time is not fixed in its value, but can change on the next reading
-            // so the trend id also includes the glucose value itself, so the previous reading's data are not overwritten
-            return String.format(Locale.US, "trend_%s_%05d_%03d", sensor.getId(), ageInSensorMinutes, glucoseLevelRaw);
+            return generateTrendId(sensor, ageInSensorMinutes, glucoseLevelRaw, glucoseLevelRaw);
         } else {
             return String.format(Locale.US, "history_%s_%05d", sensor.getId(), ageInSensorMinutes);
         }
     }
 
+    // a trend data value for a specific time is not fixed in its value, but can change on the next reading,
+    // and the smoothed value depends on the neighbouring values of the reading, so the trend id includes both
+    // values, readings share a row only if they agree on both and the previous reading's data are not overwritten
+    private static String generateTrendId(SensorData sensor, int ageInSensorMinutes, int glucoseLevelRaw, int glucoseLevelSmoothedRaw) {
+        return String.format(Locale.US, "trend_%s_%05d_%03d_%03d", sensor.getId(), ageInSensorMinutes, glucoseLevelRaw, glucoseLevelSmoothedRaw);
+    }
+
     public static float convertGlucoseMMOLToMGDL(float mmol) {
         return mmol * 18f;
     }
@@ -88,6 +110,10 @@ public class GlucoseData extends RealmObject implements Comparable<GlucoseData>
         return convertGlucoseRawToDisplayUnit(glucoseLevelRaw);
     }
 
+    public float glucoseSmoothed() {
+        return convertGlucoseRawToDisplayUnit(getGlucoseLevelSmoothedRaw());
+    }
+
     public static String formatValue(float value) {
         return GLUCOSE_UNIT_IS_MMOL ?
                 new DecimalFormat("##.0").format(value) :
@@ -108,6 +134,7 @@ public class GlucoseData extends RealmObject implements Comparable<GlucoseData>
 
     public void setSensor(SensorData sensor) {
         this.sensor = sensor;
+        sensorId = sensor.getId();
     }
 
     public boolean isTrendData() {
@@ -122,6 +149,18 @@ public class GlucoseData extends RealmObject implements Comparable<GlucoseData>
         return date;
     }
 
+    void setDate(long date) {
+        this.date = date;
+    }
+
+    int getNumTrendReferences() {
+        return numTrendReferences;
+    }
+
+    void setNumTrendReferences(int numTrendReferences) {
+        this.numTrendReferences = numTrendReferences;
+    }
+
 
     public int getTimezoneOffsetInMinutes() {
         return timezoneOffsetInMinutes;
@@ -135,6 +174,11 @@ public class GlucoseData extends RealmObject implements Comparable<GlucoseData>
         return glucoseLevelRaw;
     }
 
+    int getGlucoseLevelSmoothedRaw() {
+        // not set for data parsed before smoothing was added
+        return glucoseLevelSmoothedRaw > 0 ? glucoseLevelSmoothedRaw : glucoseLevelRaw;
+    }
+
     public String getId() {
         return id;
     }
@@ -0,0 +1,39 @@
+package com.camomile.openlibre.model;
+
+import java.util.Locale;
+
+import io.realm.RealmObject;
+import io.realm.annotations.PrimaryKey;
+
+// serialized quantile sketches of all glucose values of one local day or one block of seven days,
+// one sketch per time of day bucket, see AmbulatoryGlucoseProfile
+public class GlucoseProfilePeriod extends RealmObject {
+    public static final String ID = "id";
+
+    @PrimaryKey
+    private String id;
+    private byte[] sketches;
+
+    public GlucoseProfilePeriod() {}
+
+    GlucoseProfilePeriod(String id) {
+        this.id = id;
+    }
+
+    static String generateDayId(int day) {
+        return String.format(Locale.US, "day_%05d", day);
+    }
+
+    // week 0 starts at 1970-01-01, the weeks are just blocks of seven days
+    static String generateWeekId(int week) {
+        return String.format(Locale.US, "week_%04d", week);
+    }
+
+    byte[] getSketches() {
+        return sketches;
+    }
+
+    void setSketches(byte[] sketches) {
+        this.sketches = sketches;
+    }
+}
@@ -0,0 +1,274 @@
+package com.camomile.openlibre.model;
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+
+import static com.camomile.openlibre.model.ReadingData.historyIntervalInMinutes;
+
+// time in range, GMI and variability from per day running sums, which are updated with every stored reading,
+// so a summary costs one row per day and sensor instead of one per glucose value
+// every history value is counted once, the newest 15 minutes not yet covered by a history value are
+// estimated by a trend value, which is replaced as soon as the history value arrives
+public class GlucoseStatistics {
+    private static final long dayInMillis = TimeUnit.DAYS.toMillis(1);
+
+    // consensus ranges in mg/dl, independent of the target area in the settings
+    public enum Range {
+        VERY_LOW, // < 54
+        LOW, // 54 - 69
+        IN_RANGE, // 70 - 180
+        HIGH, // 181 - 250
+        VERY_HIGH // > 250
+    }
+
+    static Range getRange(int glucoseLevelRaw) {
+        if (glucoseLevelRaw < 540) {
+            return Range.VERY_LOW;
+        } else if (glucoseLevelRaw < 700) {
+            return Range.LOW;
+        } else if (glucoseLevelRaw <= 1800) {
+            return Range.IN_RANGE;
+        } else if (glucoseLevelRaw <= 2500) {
+            return Range.HIGH;
+        }
+        return Range.VERY_HIGH;
+    }
+
+    // stores a new reading, counts its new values, adds them to the timeline, updates the sensor clock
+    // and merges the timeline with overlapping sensors, has to be called inside a transaction
+    public static ReadingData storeReading(Realm realmProcessedData, ReadingData readingData) {
+        boolean isNewReading = realmProcessedData.where(ReadingData.class)
+                .equalTo(ReadingData.ID, readingData.getId()).count() == 0;
+        add(realmProcessedData, readingData);
+        TrendReferences.addReferences(realmProcessedData, readingData, isNewReading);
+        ReadingData managedReadingData = realmProcessedData.copyToRealmOrUpdate(readingData);
+        SensorTimeline.add(realmProcessedData, managedReadingData);
+        if (isNewReading) {
+            SensorClock.add(realmProcessedData, managedReadingData);
+        }
+        if (managedReadingData.getSensor() != null) {
+            SensorMerge.update(realmProcessedData, managedReadingData.getSensor().getId());
+        }
+        return managedReadingData;
+    }
+
+    // deletes a managed reading with its values and removes them from the statistics and the timeline, has to be called inside a transaction
+    public static void deleteReading(Realm realmProcessedData, ReadingData readingData) {
+        String sensorId = readingData.getSensor() == null ? null : readingData.getSensor().getId();
+        if (sensorId != null) {
+            for (GlucoseData glucoseData : readingData.getHistory()) {
+                // superseded values of overlapping sensors are not counted anymore
+                if (!SensorTimeline.isSuperseded(realmProcessedData, sensorId, glucoseData)) {
+                    getDailyStatistics(realmProcessedData, sensorId, getDay(glucoseData)).add(glucoseData.getGlucoseLevelRaw(), -1);
+                }
+            }
+        }
+        SensorTimeline.remove(realmProcessedData, readingData);
+        if (sensorId != null) {
+            SensorMerge.update(realmProcessedData, sensorId);
+        }
+        readingData.getHistory().deleteAllFromRealm();
+        // equal trend values of overlapping readings are shared
+        for (GlucoseData trendValue : new ArrayList<>(readingData.getTrend())) {
+            TrendReferences.removeReference(trendValue);
+        }
+        readingData.deleteFromRealm();
+    }
+
+    private static void add(Realm realm, ReadingData readingData) {
+        if (readingData.getSensor() == null || readingData.getHistory().isEmpty()) {
+            return;
+        }
+        String sensorId = readingData.getSensor().getId();
+        SensorStatistics sensorStatistics = realm.where(SensorStatistics.class)
+                .equalTo(SensorStatistics.SENSOR_ID, sensorId).findFirst();
+        if (sensorStatistics == null) {
+            sensorStatistics = realm.copyToRealm(new SensorStatistics(sensorId));
+        }
+
+        // count only history values that are not in the timeline yet, readings overlap by up to 8 hours
+        int lastHistoryAgeInMinutes = sensorStatistics.getLastHistoryAgeInMinutes();
+        AmbulatoryGlucoseProfile profile = new AmbulatoryGlucoseProfile(realm);
+        for (GlucoseData glucoseData : readingData.getHistory()) {
+            if (SensorTimeline.hasHistoryValue(realm, sensorId, glucoseData.getAgeInSensorMinutes())) {
+                continue;
+            }
+            getDailyStatistics(realm, sensorId, getDay(glucoseData)).add(glucoseData.getGlucoseLevelRaw(), 1);
+            profile.add(glucoseData);
+            lastHistoryAgeInMinutes = Math.max(lastHistoryAgeInMinutes, glucoseData.getAgeInSensorMinutes());
+        }
+        profile.store();
+        sensorStatistics.setLastHistoryAgeInMinutes(lastHistoryAgeInMinutes);
+
+        // replace the trend estimate, if this reading is newer or its history covers the estimate
+        boolean isNewest = readingData.getSensorAgeInMinutes() > sensorStatistics.getLastTrendAgeInMinutes();
+        if (sensorStatistics.hasProvisional() && (isNewest
+                || sensorStatistics.getProvisionalAgeInMinutes() < lastHistoryAgeInMinutes + historyIntervalInMinutes)) {
+            getDailyStatistics(realm, sensorId, sensorStatistics.getProvisionalDay())
+                    .add(sensorStatistics.getProvisionalGlucoseLevelRaw(), -1);
+            sensorStatistics.clearProvisional();
+        }
+        if (!isNewest || readingData.getTrend().isEmpty()) {
+            return;
+        }
+        sensorStatistics.setLastTrendAgeInMinutes(readingData.getSensorAgeInMinutes());
+        GlucoseData lastTrend = readingData.getTrend().last();
+        if (lastTrend.getAgeInSensorMinutes() >= lastHistoryAgeInMinutes + historyIntervalInMinutes) {
+            int day = getDay(lastTrend);
+            getDailyStatistics(realm, sensorId, day).add(lastTrend.getGlucoseLevelSmoothedRaw(), 1);
+            sensorStatistics.setProvisional(lastTrend.getAgeInSensorMinutes(), lastTrend.getGlucoseLevelSmoothedRaw(), day);
+        }
+    }
+
+    // a history value was taken into or out of the merged series of overlapping sensors, see SensorMerge
+    static void countMerged(Realm realm, String sensorId, GlucoseData glucoseData, int weight) {
+        getDailyStatistics(realm, sensorId, getDay(glucoseData)).add(glucoseData.getGlucoseLevelRaw(), weight);
+    }
+
+    // a history value was dated again by the SensorClock, moves it to the day of its new date and collects
+    // the days whose glucose profile has to be built again
+    static void redate(Realm realm, TimelinePoint point, long previousDate, Set<Integer> changedProfileDays) {
+        GlucoseData glucoseData = point.getGlucoseData();
+        long previousLocalTime = previousDate + TimeUnit.MINUTES.toMillis(glucoseData.getTimezoneOffsetInMinutes());
+        long localTime = getLocalTimeInMillis(glucoseData);
+        int previousDay = getDay(previousLocalTime);
+        int day = getDay(localTime);
+        // superseded values of overlapping sensors are not counted
+        if (day != previousDay && !point.isSuperseded()) {
+            getDailyStatistics(realm, point.getSensorId(), previousDay).add(glucoseData.getGlucoseLevelRaw(), -1);
+            getDailyStatistics(realm, point.getSensorId(), day).add(glucoseData.getGlucoseLevelRaw(), 1);
+        }
+        if (day != previousDay || AmbulatoryGlucoseProfile.getBucket(localTime) != AmbulatoryGlucoseProfile.getBucket(previousLocalTime)) {
+            changedProfileDays.add(previousDay);
+            changedProfileDays.add(day);
+        }
+    }
+
+    // moves the trend value counted in place of the missing history value to the day of its new date
+    static void redateProvisional(Realm realm, String sensorId) {
+        SensorStatistics sensorStatistics = realm.where(SensorStatistics.class)
+                .equalTo(SensorStatistics.SENSOR_ID, sensorId).findFirst();
+        if (sensorStatistics == null || !sensorStatistics.hasProvisional()) {
+            return;
+        }
+        TimelinePoint point = realm.where(TimelinePoint.class)
+                .equalTo(TimelinePoint.ID, TimelinePoint.generateId(sensorId, sensorStatistics.getProvisionalAgeInMinutes()))
+                .findFirst();
+        if (point == null) {
+            return;
+        }
+        int day = getDay(point.getGlucoseData());
+        if (day != sensorStatistics.getProvisionalDay()) {
+            int glucoseLevelRaw = sensorStatistics.getProvisionalGlucoseLevelRaw();
+            getDailyStatistics(realm, sensorId, sensorStatistics.getProvisionalDay()).add(glucoseLevelRaw, -1);
+            getDailyStatistics(realm, sensorId, day).add(glucoseLevelRaw, 1);
+            sensorStatistics.setProvisional(sensorStatistics.getProvisionalAgeInMinutes(), glucoseLevelRaw, day);
+        }
+    }
+
+    private static DailyStatistics getDailyStatistics(Realm realm, String sensorId, int day) {
+        DailyStatistics dailyStatistics = realm.where(DailyStatistics.class)
+                .equalTo(DailyStatistics.ID, DailyStatistics.generateId(sensorId, day)).findFirst();
+        if (dailyStatistics == null) {
+            dailyStatistics = realm.copyToRealm(new DailyStatistics(sensorId, day));
+        }
+        return dailyStatistics;
+    }
+
+    private static int getDay(GlucoseData glucoseData) {
+        return getDay(getLocalTimeInMillis(glucoseData));
+    }
+
+    static int getDay(long localTimeInMillis) {
+        return (int) (localTimeInMillis / dayInMillis);
+    }
+
+    static long getLocalTimeInMillis(GlucoseData glucoseData) {
+        return glucoseData.getDate() + TimeUnit.MINUTES.toMillis(glucoseData.getTimezoneOffsetInMinutes());
+    }
+
+    public static int getToday() {
+        long now = System.currentTimeMillis();
+        return getDay(now + TimeZone.getDefault().getOffset(now));
+    }
+
+    // sums up the last days including today, over all sensors
+    public static Summary getSummary(Realm realmProcessedData, int days) {
+        Summary summary = new Summary(days);
+        for (DailyStatistics dailyStatistics : realmProcessedData.where(DailyStatistics.class)
+                .greaterThan(DailyStatistics.DAY, getToday() - days).findAll()) {
+            summary.add(dailyStatistics);
+        }
+        return summary;
+    }
+
+    public static class Summary {
+        private final int days;
+        private long count = 0;
+        private long sum = 0;
+        private long sumOfSquares = 0;
+        private final long[] countPerRange = new long[Range.values().length];
+
+        Summary(int days) {
+            this.days = days;
+        }
+
+        void add(DailyStatistics dailyStatistics) {
+            count += dailyStatistics.getCount();
+            sum += dailyStatistics.getSum();
+            sumOfSquares += dailyStatistics.getSumOfSquares();
+            countPerRange[Range.VERY_LOW.ordinal()] += dailyStatistics.getCountVeryLow();
+            countPerRange[Range.LOW.ordinal()] += dailyStatistics.getCountLow();
+            countPerRange[Range.IN_RANGE.ordinal()] += dailyStatistics.getCountInRange();
+            countPerRange[Range.HIGH.ordinal()] += dailyStatistics.getCountHigh();
+            countPerRange[Range.VERY_HIGH.ordinal()] += dailyStatistics.getCountVeryHigh();
+        }
+
+        public int getDays() {
+            return days;
+        }
+
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+        // mg/dl
+        public double getMean() {
+            return count == 0 ? 0 : sum / (double) count / 10;
+        }
+
+        // mg/dl
+        public double getStandardDeviation() {
+            if (count < 2) {
+                return 0;
+            }
+            double meanRaw = sum / (double) count;
+            double variance = (sumOfSquares - count * meanRaw * meanRaw) / (count - 1);
+            return Math.sqrt(Math.max(0, variance)) / 10;
+        }
+
+        // coefficient of variation in %
+        public double getCoefficientOfVariation() {
+            return count == 0 ? 0 : 100 * getStandardDeviation() / getMean();
+        }
+
+        // glucose management indicator in %, Bergenstal et al. 2018
+        public double getGlucoseManagementIndicator() {
+            return 3.31 + 0.02392 * getMean();
+        }
+
+        // share of the values in %
+        public double getPercentage(Range range) {
+            return count == 0 ? 0 : 100.0 * countPerRange[range.ordinal()] / count;
+        }
+
+        // share of the time covered by values in %
+        public double getCoverage() {
+            return 100.0 * count * historyIntervalInMinutes / TimeUnit.DAYS.toMinutes(days);
+        }
+    }
+}
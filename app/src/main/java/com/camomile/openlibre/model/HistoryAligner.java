@@ -0,0 +1,140 @@
+package com.camomile.openlibre.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// finds the offset of a new history ring against the stored history values of the same sensor
+// the time a sensor writes a history value is not known exactly, so the same value can be read at
+// slightly different ages by two readings, and after a gap the estimate can be off by several slots
+// a shift of at most one slot is expected and kept unless the stored values clearly contradict it,
+// a larger shift has to be confirmed by a large part of the new values without a single mismatch,
+// as a few equal values can occur by chance at any offset of a slowly changing curve
+// the equal values of all shifts are counted in one pass, so the search grows linearly with the number of values
+// as long as few of them repeat, the compared values are only counted for the near shifts and for the few far
+// shifts with enough matches to be accepted
+class HistoryAligner {
+    private static final int maxNearShift = 1;
+    private static final int minOverlap = 4; // values confirmed by stored values
+    private static final float minNearAgreement = 0.5f; // fraction of compared values that have to be equal
+    private static final float minFarOverlapFraction = 0.5f; // fraction of the new values a larger shift has to confirm
+
+    static class Alignment {
+        static final Alignment NONE = new Alignment(0, 0, 0);
+
+        final int shift; // in slots, new slot i belongs to previous slot i + shift
+        final int overlap; // number of values confirmed by stored values
+        final float confidence; // fraction of the compared values that are equal at this shift
+
+        Alignment(int shift, int overlap, float confidence) {
+            this.shift = shift;
+            this.overlap = overlap;
+            this.confidence = confidence;
+        }
+
+        boolean isAligned() {
+            return overlap > 0;
+        }
+    }
+
+    private HistoryAligner() {}
+
+    // values and previousValues are indexed by slot, 0 where no value is known,
+    // values[i] is at the same slot as previousValues[i + maxShift] without a shift
+    static Alignment align(int[] values, int numValues, int[] previousValues, int numPreviousValues, int maxShift) {
+        int numKnownValues = 0;
+        for (int i = 0; i < numValues; i++) {
+            if (values[i] != 0) {
+                numKnownValues++;
+            }
+        }
+        int[] matches = countMatches(values, numValues, previousValues, numPreviousValues, maxShift);
+
+        // small shifts first, 0 before +1 before -1 if they fit equally well
+        int nearShift = 0;
+        int nearMatches = 0;
+        int nearCompared = 0;
+        for (int distance = 0; distance <= Math.min(maxNearShift, maxShift); distance++) {
+            for (int sign = 1; sign >= -1; sign -= 2) {
+                if (distance == 0 && sign < 0) {
+                    continue;
+                }
+                int shift = sign * distance;
+                if (matches[shift + maxShift] > nearMatches) {
+                    nearShift = shift;
+                    nearMatches = matches[shift + maxShift];
+                    nearCompared = countCompared(values, numValues, previousValues, numPreviousValues, maxShift, shift);
+                }
+            }
+        }
+        if (nearMatches > 0 && nearMatches >= minNearAgreement * nearCompared) {
+            return new Alignment(nearShift, nearMatches, nearMatches / (float) nearCompared);
+        }
+
+        // no small shift fits, a larger one has to be confirmed without any mismatch and by a single offset only,
+        // as every compared value has to match, only shifts with enough matches are compared at all
+        int minFarMatches = Math.max(minOverlap, (int) Math.ceil(minFarOverlapFraction * numKnownValues));
+        int farShift = 0;
+        int farMatches = 0;
+        boolean ambiguous = false;
+        for (int shift = -maxShift; shift <= maxShift; shift++) {
+            if (Math.abs(shift) <= maxNearShift || matches[shift + maxShift] < minFarMatches) {
+                continue;
+            }
+            int compared = countCompared(values, numValues, previousValues, numPreviousValues, maxShift, shift);
+            if (matches[shift + maxShift] < compared) {
+                continue;
+            }
+            if (compared == farMatches) {
+                ambiguous = true;
+            } else if (compared > farMatches) {
+                farShift = shift;
+                farMatches = compared;
+                ambiguous = false;
+            }
+        }
+        if (farMatches == 0 || ambiguous) {
+            return Alignment.NONE;
+        }
+        return new Alignment(farShift, farMatches, 1);
+    }
+
+    // number of equal values for every shift from -maxShift to maxShift, found in one pass over both histories
+    // by chaining the stored slots of equal values instead of comparing all values once per shift
+    private static int[] countMatches(int[] values, int numValues, int[] previousValues, int numPreviousValues, int maxShift) {
+        Map<Integer, Integer> lastSlotOfValue = new HashMap<>();
+        int[] previousSlotOfValue = new int[numPreviousValues]; // next lower slot with the same value, -1 if none
+        for (int slot = 0; slot < numPreviousValues; slot++) {
+            if (previousValues[slot] != 0) {
+                Integer lastSlot = lastSlotOfValue.put(previousValues[slot], slot);
+                previousSlotOfValue[slot] = lastSlot == null ? -1 : lastSlot;
+            }
+        }
+
+        int[] matches = new int[2 * maxShift + 1];
+        for (int i = 0; i < numValues; i++) {
+            if (values[i] == 0) {
+                continue;
+            }
+            Integer lastSlot = lastSlotOfValue.get(values[i]);
+            // slots descend along the chain, slots below i are beyond the largest negative shift
+            for (int slot = lastSlot == null ? -1 : lastSlot; slot >= i; slot = previousSlotOfValue[slot]) {
+                int shift = slot - i - maxShift;
+                if (shift <= maxShift) {
+                    matches[shift + maxShift]++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    // number of slots at which both a new and a stored value are known
+    private static int countCompared(int[] values, int numValues, int[] previousValues, int numPreviousValues, int maxShift, int shift) {
+        int compared = 0;
+        for (int i = Math.max(0, -maxShift - shift); i < numValues && i + maxShift + shift < numPreviousValues; i++) {
+            if (values[i] != 0 && previousValues[i + maxShift + shift] != 0) {
+                compared++;
+            }
+        }
+        return compared;
+    }
+}
@@ -1,20 +1,22 @@
 package com.camomile.openlibre.model;
 
-import org.apache.commons.math3.stat.regression.SimpleRegression;
+import com.camomile.openlibre.model.prediction.GlucosePredictor;
+import com.camomile.openlibre.model.prediction.PredictorRegistry;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.TimeZone;
 
-import static java.lang.Math.min;
+import static com.camomile.openlibre.OpenLibre.PREDICTION_MINUTES;
+import static com.camomile.openlibre.OpenLibre.PREDICTION_MODEL;
 
 public class PredictionData {
-    private static final int PREDICTION_TIME = 15; // in minutes
-    private static final double MAX_CONFIDENCE_INTERVAL = 2;
     public double glucoseSlopeRaw = -1; // mg/dl / 10 minutes
-    private double confidenceInterval = -1;
+    private double confidence = 0;
     public GlucoseData glucoseData = new GlucoseData();
-    private SimpleRegression regression;
+    private GlucosePredictor predictor;
+    private int lastAgeInSensorMinutes;
+    private List<GlucoseData> trendList;
 
     public PredictionData(List<GlucoseData> trendList) {
         makePrediction(trendList);
@@ -24,39 +26,65 @@ public class PredictionData {
         if (trendList.size() == 0) {
             return;
         }
-        regression = new SimpleRegression();
-        for (int i = 0; i < trendList.size(); i++) {
-            regression.addData(i, (trendList.get(i)).getGlucoseLevelRaw());
+        this.trendList = trendList;
+        GlucoseData lastTrendData = trendList.get(trendList.size() - 1);
+        lastAgeInSensorMinutes = lastTrendData.getAgeInSensorMinutes();
+
+        // the predictor of the sensor only needs the trend values newer than the previous reading,
+        // older readings (e.g. in the log) get a predictor of their own
+        predictor = PredictorRegistry.getInstance().getPredictor(trendList.get(0).getSensor().getId(), PREDICTION_MODEL);
+        synchronized (predictor) {
+            if (predictor.getLastAgeInSensorMinutes() > lastAgeInSensorMinutes) {
+                predictor = PREDICTION_MODEL.create();
+            }
+            update(predictor, trendList);
+
+            int ageInSensorMinutes = lastAgeInSensorMinutes + PREDICTION_MINUTES;
+            int glucoseLevelRaw = (int) predictor.predict(ageInSensorMinutes);
+            glucoseSlopeRaw = predictor.getSlope();
+            confidence = predictor.getConfidence();
+            glucoseData = new GlucoseData(
+                    trendList.get(0).getSensor(),
+                    ageInSensorMinutes,
+                    trendList.get(0).getTimezoneOffsetInMinutes(),
+                    glucoseLevelRaw,
+                    true
+            );
         }
-        int glucoseLevelRaw =
-                (int) regression.predict(regression.getN() - 1 + PREDICTION_TIME);
-        glucoseSlopeRaw = regression.getSlope();
-        confidenceInterval = regression.getSlopeConfidenceInterval();
-        int ageInSensorMinutes =
-                trendList.get(trendList.size() - 1).getAgeInSensorMinutes() + PREDICTION_TIME;
-        glucoseData = new GlucoseData(
-                trendList.get(0).getSensor(),
-                ageInSensorMinutes,
-                trendList.get(0).getTimezoneOffsetInMinutes(),
-                glucoseLevelRaw,
-                true
-        );
     }
 
     public List<GlucoseData> getPredictedData(int[] ageInSensorMinutesList) {
+        if (predictor == null) {
+            return new ArrayList<>();
+        }
+        synchronized (predictor) {
+            if (predictor.getLastAgeInSensorMinutes() == lastAgeInSensorMinutes) {
+                return predict(ageInSensorMinutesList);
+            }
+        }
+        // the shared predictor has moved on to a newer reading in the meantime, so this reading gets a predictor of its own
+        predictor = PREDICTION_MODEL.create();
+        update(predictor, trendList);
+        return predict(ageInSensorMinutesList);
+    }
+
+    private List<GlucoseData> predict(int[] ageInSensorMinutesList) {
         int timezoneOffsetInMinutes = TimeZone.getDefault().getOffset(System.currentTimeMillis()) / 1000 / 60;
         List<GlucoseData> predictedData = new ArrayList<>();
         for (int ageInSensorMinutes : ageInSensorMinutesList) {
-            int glucoseLevelRaw =
-                (int) regression.predict(ageInSensorMinutes -
-                        (glucoseData.getAgeInSensorMinutes() - (regression.getN() - 1 + PREDICTION_TIME))
-                );
+            int glucoseLevelRaw = (int) predictor.predict(ageInSensorMinutes);
             predictedData.add(new GlucoseData(glucoseData.getSensor(), ageInSensorMinutes, timezoneOffsetInMinutes, glucoseLevelRaw, true));
         }
         return predictedData;
     }
 
+    private static void update(GlucosePredictor predictor, List<GlucoseData> trendList) {
+        for (GlucoseData trendData : trendList) {
+            predictor.update(trendData.getAgeInSensorMinutes(), trendData.getGlucoseLevelSmoothedRaw());
+        }
+    }
+
     public double confidence() {
-        return 1.0 - min(confidenceInterval, MAX_CONFIDENCE_INTERVAL) / MAX_CONFIDENCE_INTERVAL;
+        return confidence;
     }
 }
@@ -2,6 +2,6 @@ package com.camomile.openlibre.model;
 
 import io.realm.annotations.RealmModule;
 
-@RealmModule(classes = { ReadingData.class, SensorData.class, GlucoseData.class })
+@RealmModule(classes = { ReadingData.class, SensorData.class, GlucoseData.class, DailyStatistics.class, SensorStatistics.class, GlucoseProfilePeriod.class, TimelinePoint.class, SensorClock.class, SensorAccuracy.class, SensorOverlap.class })
 public class ProcessedDataModule {
 }
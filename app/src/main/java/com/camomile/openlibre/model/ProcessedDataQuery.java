@@ -0,0 +1,53 @@
+package com.camomile.openlibre.model;
+
+import io.realm.Realm;
+import io.realm.RealmQuery;
+import io.realm.Sort;
+
+// queries on the processed data that are scoped to one sensor, they only use primary keys and indexed fields,
+// so their cost grows with the data of that sensor instead of the whole database
+public class ProcessedDataQuery {
+
+    public static SensorData findSensor(Realm realmProcessedData, String tagId) {
+        return realmProcessedData.where(SensorData.class)
+                .equalTo(SensorData.ID, SensorData.generateId(tagId))
+                .findFirst();
+    }
+
+    public static RealmQuery<ReadingData> readingsOfSensor(Realm realmProcessedData, String sensorId) {
+        return realmProcessedData.where(ReadingData.class)
+                .equalTo(ReadingData.SENSOR_ID, sensorId);
+    }
+
+    public static RealmQuery<GlucoseData> glucoseDataOfSensor(Realm realmProcessedData, String sensorId) {
+        return realmProcessedData.where(GlucoseData.class)
+                .equalTo(GlucoseData.SENSOR_ID, sensorId);
+    }
+
+    public static ReadingData findLatestReading(Realm realmProcessedData) {
+        return realmProcessedData.where(ReadingData.class)
+                .sort(ReadingData.DATE, Sort.DESCENDING)
+                .findFirst();
+    }
+
+    // deletes a sensor with all its readings, values and statistics, has to be called inside a transaction
+    // the glucose profile is not split by sensor and keeps the values until the raw data is parsed again
+    public static void deleteSensor(Realm realmProcessedData, String tagId) {
+        String sensorId = SensorData.generateId(tagId);
+        SensorMerge.removeSensor(realmProcessedData, sensorId);
+        readingsOfSensor(realmProcessedData, sensorId).findAll().deleteAllFromRealm();
+        glucoseDataOfSensor(realmProcessedData, sensorId).findAll().deleteAllFromRealm();
+        realmProcessedData.where(TimelinePoint.class)
+                .equalTo(TimelinePoint.SENSOR_ID, sensorId).findAll().deleteAllFromRealm();
+        realmProcessedData.where(DailyStatistics.class)
+                .equalTo(DailyStatistics.SENSOR_ID, sensorId).findAll().deleteAllFromRealm();
+        realmProcessedData.where(SensorStatistics.class)
+                .equalTo(SensorStatistics.SENSOR_ID, sensorId).findAll().deleteAllFromRealm();
+        realmProcessedData.where(SensorClock.class)
+                .equalTo(SensorClock.SENSOR_ID, sensorId).findAll().deleteAllFromRealm();
+        realmProcessedData.where(SensorAccuracy.class)
+                .equalTo(SensorAccuracy.SENSOR_ID, sensorId).findAll().deleteAllFromRealm();
+        realmProcessedData.where(SensorData.class)
+                .equalTo(SensorData.ID, sensorId).findAll().deleteAllFromRealm();
+    }
+}
@@ -0,0 +1,160 @@
+package com.camomile.openlibre.model;
+
+import java.nio.ByteBuffer;
+
+// t-digest (Dunning and Ertl): mergeable quantile estimate from at most about compression weighted centroids
+// centroids near the median may absorb many values, those in the tails only few, so the 5th and 95th
+// percentile stay accurate while the size does not grow with the number of values
+public class QuantileSketch {
+    private static final int compression = 100;
+    private static final int maxBufferedCentroids = 5 * compression;
+
+    private float[] means;
+    private int[] weights;
+    private int size = 0;
+    private long totalWeight = 0;
+    private boolean sorted = true;
+
+    public QuantileSketch() {
+        this(8);
+    }
+
+    private QuantileSketch(int capacity) {
+        means = new float[capacity];
+        weights = new int[capacity];
+    }
+
+    public boolean isEmpty() {
+        return totalWeight == 0;
+    }
+
+    public long getCount() {
+        return totalWeight;
+    }
+
+    public void add(float value) {
+        add(value, 1);
+    }
+
+    public void merge(QuantileSketch other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+    }
+
+    private void add(float mean, int weight) {
+        if (size == means.length) {
+            if (size >= maxBufferedCentroids) {
+                compress();
+            }
+            if (size == means.length) {
+                int capacity = Math.min(2 * means.length, maxBufferedCentroids + 1);
+                float[] newMeans = new float[capacity];
+                int[] newWeights = new int[capacity];
+                System.arraycopy(means, 0, newMeans, 0, size);
+                System.arraycopy(weights, 0, newWeights, 0, size);
+                means = newMeans;
+                weights = newWeights;
+            }
+        }
+        if (size > 0 && mean < means[size - 1]) {
+            sorted = false;
+        }
+        means[size] = mean;
+        weights[size] = weight;
+        size++;
+        totalWeight += weight;
+    }
+
+    // merges neighbouring centroids as long as each one covers at most one unit of the scale function
+    // k(q) = compression / (2 pi) * asin(2q - 1), which is steep near the tails and bounds the number of centroids
+    private void compress() {
+        sort();
+        int merged = 0;
+        long weightSoFar = 0;
+        double kLeft = scale(0);
+        for (int i = 1; i < size; i++) {
+            long combinedWeight = weights[merged] + weights[i];
+            if (scale((weightSoFar + combinedWeight) / (double) totalWeight) - kLeft <= 1) {
+                means[merged] += (means[i] - means[merged]) * weights[i] / (float) combinedWeight;
+                weights[merged] = (int) combinedWeight;
+            } else {
+                weightSoFar += weights[merged];
+                kLeft = scale(weightSoFar / (double) totalWeight);
+                merged++;
+                means[merged] = means[i];
+                weights[merged] = weights[i];
+            }
+        }
+        size = Math.min(size, merged + 1);
+    }
+
+    private static double scale(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * Math.min(1, q) - 1);
+    }
+
+    // insertion sort, the centroids are mostly sorted already
+    private void sort() {
+        if (sorted) {
+            return;
+        }
+        for (int i = 1; i < size; i++) {
+            float mean = means[i];
+            int weight = weights[i];
+            int j = i - 1;
+            while (j >= 0 && means[j] > mean) {
+                means[j + 1] = means[j];
+                weights[j + 1] = weights[j];
+                j--;
+            }
+            means[j + 1] = mean;
+            weights[j + 1] = weight;
+        }
+        sorted = true;
+    }
+
+    // linear interpolation between the centers of the centroids, NaN if empty
+    public float quantile(double q) {
+        if (size == 0) {
+            return Float.NaN;
+        }
+        compress();
+        double target = q * totalWeight;
+        double center = weights[0] / 2.0;
+        if (target <= center) {
+            return means[0];
+        }
+        for (int i = 1; i < size; i++) {
+            double nextCenter = center + (weights[i - 1] + weights[i]) / 2.0;
+            if (target <= nextCenter) {
+                double fraction = (target - center) / (nextCenter - center);
+                return (float) (means[i - 1] + fraction * (means[i] - means[i - 1]));
+            }
+            center = nextCenter;
+        }
+        return means[size - 1];
+    }
+
+    int getSerializedSize() {
+        compress();
+        return 2 + size * 8;
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        compress();
+        buffer.putShort((short) size);
+        for (int i = 0; i < size; i++) {
+            buffer.putFloat(means[i]);
+            buffer.putInt(weights[i]);
+        }
+    }
+
+    static QuantileSketch readFrom(ByteBuffer buffer) {
+        int size = buffer.getShort();
+        QuantileSketch sketch = new QuantileSketch(Math.max(8, size));
+        for (int i = 0; i < size; i++) {
+            sketch.add(buffer.getFloat(), buffer.getInt());
+        }
+        return sketch;
+    }
+}
@@ -22,6 +22,17 @@ public class RawTagData extends RealmObject {
     private static final int offsetSensorAge = 316;
     private static final int tableEntrySize = 6;
     private static final int sensorInitializationInMinutes = 60;
+    private static final int numTrendValues = 16;
+    private static final int numHistoryValues = 32;
+    private static final int historyIntervalInMinutes = 15;
+
+    // FRAM layout as seen by the NFC reader: 8 byte blocks, header in blocks 0-2,
+    // trend and history indices in block 3 and the sensor age in block 39
+    public static final int blockSize = 8;
+    public static final int numBlocks = 41;
+    private static final int numHeaderBlocks = 3;
+    private static final int blockIndexTables = offsetTrendIndex / blockSize;
+    private static final int blockSensorAge = offsetSensorAge / blockSize;
 
     @PrimaryKey
     private String id;
@@ -88,6 +99,67 @@ public class RawTagData extends RealmObject {
         return max(0, sensorInitializationInMinutes - getSensorAgeInMinutes(data));
     }
 
+    // blocks that have to be read first to find out what changed since a previous reading
+    public static void markIndexBlocks(boolean[] blocks) {
+        for (int block = 0; block < numHeaderBlocks; block++) {
+            blocks[block] = true;
+        }
+        blocks[blockIndexTables] = true;
+        blocks[blockSensorAge] = true;
+    }
+
+    // marks all blocks that may have changed between previousData and data, where data only
+    // needs to contain fresh header and index blocks (see markIndexBlocks)
+    // returns false if the changes can not be narrowed down and the complete tag has to be read
+    public static boolean markChangedBlocks(byte[] previousData, byte[] data, boolean[] blocks) {
+        for (int offset = 0; offset < numHeaderBlocks * blockSize; offset++) {
+            if (previousData[offset] != data[offset]) {
+                return false;
+            }
+        }
+
+        int elapsedMinutes = getSensorAgeInMinutes(data) - getSensorAgeInMinutes(previousData);
+        if (elapsedMinutes < 0) {
+            return false;
+        }
+
+        int previousIndexTrend = previousData[offsetTrendIndex] & 0xFF;
+        int indexTrend = data[offsetTrendIndex] & 0xFF;
+        int previousIndexHistory = previousData[offsetHistoryIndex] & 0xFF;
+        int indexHistory = data[offsetHistoryIndex] & 0xFF;
+        if (indexTrend >= numTrendValues || indexHistory >= numHistoryValues) {
+            return false;
+        }
+
+        markChangedEntries(blocks, offsetTrendTable, numTrendValues,
+                previousIndexTrend, indexTrend, elapsedMinutes);
+        markChangedEntries(blocks, offsetHistoryTable, numHistoryValues,
+                previousIndexHistory, indexHistory, elapsedMinutes / historyIntervalInMinutes);
+        return true;
+    }
+
+    private static void markChangedEntries(boolean[] blocks, int offsetTable, int numValues,
+                                           int previousIndex, int index, int elapsedEntries) {
+        int numWritten = (index - previousIndex + numValues) % numValues;
+        // also re-read the entry before the previous index and the one at the current index,
+        // as the exact moment the sensor updates the index relative to the entry is not known
+        int numChanged = numWritten + 2;
+        if (elapsedEntries + 2 >= numValues || numWritten > elapsedEntries + 1 || numChanged >= numValues) {
+            markBytes(blocks, offsetTable, numValues * tableEntrySize);
+            return;
+        }
+        for (int counter = 0; counter < numChanged; counter++) {
+            int entry = (previousIndex - 1 + counter + numValues) % numValues;
+            markBytes(blocks, offsetTable + entry * tableEntrySize, tableEntrySize);
+        }
+    }
+
+    private static void markBytes(boolean[] blocks, int offset, int length) {
+        for (int block = offset / blockSize; block <= (offset + length - 1) / blockSize; block++) {
+            blocks[block] = true;
+        }
+    }
+
     public long getDate() {
         return date;
     }
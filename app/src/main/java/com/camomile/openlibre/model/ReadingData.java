@@ -2,25 +2,25 @@ package com.camomile.openlibre.model;
 
 import android.util.Log;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.TimeUnit;
+import com.camomile.openlibre.RealmProvider;
+
+import java.util.Locale;
 
 import io.realm.Realm;
 import io.realm.RealmList;
 import io.realm.RealmObject;
 import io.realm.RealmResults;
-import io.realm.Sort;
+import io.realm.annotations.Index;
 import io.realm.annotations.PrimaryKey;
 
+import static com.camomile.openlibre.OpenLibre.TREND_SMOOTHING;
 import static com.camomile.openlibre.OpenLibre.realmConfigProcessedData;
-import static com.camomile.openlibre.model.SensorData.maxSensorAgeInMinutes;
 import static com.camomile.openlibre.model.SensorData.minSensorAgeInMinutes;
-import static java.lang.Math.min;
 
 public class ReadingData extends RealmObject {
     public static final String ID = "id";
     public static final String SENSOR = "sensor";
+    public static final String SENSOR_ID = "sensorId";
     public static final String SENSOR_AGE_IN_MINUTES = "sensorAgeInMinutes";
     public static final String DATE = "date";
     public static final String TIMEZONE_OFFSET_IN_MINUTES = "timezoneOffsetInMinutes";
@@ -35,7 +35,10 @@ public class ReadingData extends RealmObject {
     @PrimaryKey
     private String id;
     private SensorData sensor;
+    @Index
+    private String sensorId; // same as sensor.getId(), but indexed
     private int sensorAgeInMinutes = -1;
+    @Index
     private long date = -1;
     private int timezoneOffsetInMinutes;
     private RealmList<GlucoseData> trend = new RealmList<>();
@@ -48,44 +51,35 @@ public class ReadingData extends RealmObject {
         timezoneOffsetInMinutes = rawTagData.getTimezoneOffsetInMinutes();
         sensorAgeInMinutes = rawTagData.getSensorAgeInMinutes();
 
-        Realm realmProcessedData = Realm.getInstance(realmConfigProcessedData);
+        Realm realmProcessedData = RealmProvider.acquire(realmConfigProcessedData);
 
         // find or create entry for this sensor
-        RealmResults<SensorData> sensors = realmProcessedData.where(SensorData.class).contains(SensorData.ID, rawTagData.getTagId()).findAll();
-        if (sensors.size() > 0) {
-            sensor = sensors.first();
-        } else {
+        sensor = ProcessedDataQuery.findSensor(realmProcessedData, rawTagData.getTagId());
+        if (sensor == null) {
             sensor = new SensorData(rawTagData);
         }
+        sensorId = sensor.getId();
 
         // check if sensor is of valid age
-        if (sensorAgeInMinutes <= minSensorAgeInMinutes || sensorAgeInMinutes > maxSensorAgeInMinutes) {
-            realmProcessedData.close();
+        if (!SensorData.isValidAge(sensorAgeInMinutes)) {
+            RealmProvider.release(realmConfigProcessedData);
             return;
         }
 
-        // calculate time drift between sensor readings
-        int lastSensorAgeInMinutes = 0;
-        long lastReadingDate = sensor.getStartDate();
-        RealmResults<ReadingData> readings = realmProcessedData.where(ReadingData.class)
-                .contains(ReadingData.ID, rawTagData.getTagId())
-                .lessThan(ReadingData.DATE, date)
-                .sort(ReadingData.DATE, Sort.DESCENDING)
-                .findAll();
-        if (readings.size() > 0) {
-            lastSensorAgeInMinutes = readings.first().getSensorAgeInMinutes();
-            lastReadingDate = readings.first().getDate();
-        }
-        double timeDriftFactor = 1;
-        if (lastSensorAgeInMinutes < sensorAgeInMinutes) {
-            timeDriftFactor = (date - lastReadingDate) / (double) TimeUnit.MINUTES.toMillis(sensorAgeInMinutes - lastSensorAgeInMinutes);
-        }
+        // date the values with the clock model of the sensor including this reading
+        SensorClock clock = SensorClock.withReading(realmProcessedData, sensor, id, sensorAgeInMinutes, date);
 
         int indexTrend = rawTagData.getIndexTrend();
 
         int mostRecentHistoryAgeInMinutes = 3 + (sensorAgeInMinutes - 3) % historyIntervalInMinutes;
 
 
+        // the buffers are reused by every reading parsed on this thread
+        TrendSmoother trendSmoother = TrendSmoother.getInstance();
+        int[] trendLevels = trendSmoother.levels;
+        int[] trendAges = trendSmoother.ages;
+        int numTrendLevels = 0;
+
         // read trend values from ring buffer, starting at indexTrend (bytes 28-123)
         for (int counter = 0; counter < numTrendValues; counter++) {
             int index = (indexTrend + counter) % numTrendValues;
@@ -94,17 +88,27 @@ public class ReadingData extends RealmObject {
             // skip zero values if the sensor has not filled the ring buffer yet completely
             if (glucoseLevelRaw > 0) {
                 int dataAgeInMinutes = numTrendValues - counter;
-                int ageInSensorMinutes = sensorAgeInMinutes - dataAgeInMinutes;
-                long dataDate = lastReadingDate + (long) (TimeUnit.MINUTES.toMillis(ageInSensorMinutes - lastSensorAgeInMinutes) * timeDriftFactor);
-
-                trend.add(new GlucoseData(sensor, ageInSensorMinutes, timezoneOffsetInMinutes, glucoseLevelRaw, true, dataDate));
+                trendLevels[numTrendLevels] = glucoseLevelRaw;
+                trendAges[numTrendLevels] = sensorAgeInMinutes - dataAgeInMinutes;
+                numTrendLevels++;
             }
         }
 
+        // keep the raw trend values and store the smoothed ones next to them
+        int[] smoothedTrendLevels = trendSmoother.smoothedLevels;
+        trendSmoother.smooth(TREND_SMOOTHING, trendLevels, trendAges, smoothedTrendLevels, numTrendLevels);
+        for (int i = 0; i < numTrendLevels; i++) {
+            int ageInSensorMinutes = trendAges[i];
+            long dataDate = clock.getDate(ageInSensorMinutes);
+
+            trend.add(new GlucoseData(sensor, ageInSensorMinutes, timezoneOffsetInMinutes, trendLevels[i], smoothedTrendLevels[i], dataDate));
+        }
+
         int indexHistory = rawTagData.getIndexHistory();
 
-        ArrayList<Integer> glucoseLevels = new ArrayList<>();
-        ArrayList<Integer> ageInSensorMinutesList = new ArrayList<>();
+        int[] historyLevels = new int[numHistoryValues];
+        int[] historyAges = new int[numHistoryValues];
+        int numHistoryLevels = 0;
 
         // read history values from ring buffer, starting at indexHistory (bytes 124-315)
         for (int counter = 0; counter < numHistoryValues; counter++) {
@@ -118,43 +122,37 @@ public class ReadingData extends RealmObject {
 
                 // skip the first hour of sensor data as it is faulty
                 if (ageInSensorMinutes > minSensorAgeInMinutes) {
-                    glucoseLevels.add(glucoseLevelRaw);
-                    ageInSensorMinutesList.add(ageInSensorMinutes);
+                    historyLevels[numHistoryLevels] = glucoseLevelRaw;
+                    historyAges[numHistoryLevels] = ageInSensorMinutes;
+                    numHistoryLevels++;
                 }
             }
         }
 
         // check if there were actually any valid data points
-        if (ageInSensorMinutesList.isEmpty()) {
-            realmProcessedData.close();
-            return;
-        }
-
-        // try to shift age to make this reading fit to older readings
-        try {
-            shiftAgeToMatchPreviousReadings(realmProcessedData, glucoseLevels, ageInSensorMinutesList);
-        } catch (RuntimeException e) {
-            Log.e("OpenLibre::ReadingData", e.getMessage() + " For reading with id " + id);
-            realmProcessedData.close();
+        if (numHistoryLevels == 0) {
+            RealmProvider.release(realmConfigProcessedData);
             return;
         }
 
+        // shift the ages to make this reading fit to older readings
+        numHistoryLevels = alignHistory(realmProcessedData, historyLevels, historyAges, numHistoryLevels);
 
         // create history data point list
-        for (int i = 0; i < glucoseLevels.size(); i++) {
-            int glucoseLevelRaw = glucoseLevels.get(i);
-            int ageInSensorMinutes = ageInSensorMinutesList.get(i);
-            long dataDate = lastReadingDate + (long) (TimeUnit.MINUTES.toMillis(ageInSensorMinutes - lastSensorAgeInMinutes) * timeDriftFactor);
+        for (int i = 0; i < numHistoryLevels; i++) {
+            int glucoseLevelRaw = historyLevels[i];
+            int ageInSensorMinutes = historyAges[i];
+            long dataDate = clock.getDate(ageInSensorMinutes);
 
             GlucoseData glucoseData = makeGlucoseData(realmProcessedData, glucoseLevelRaw, ageInSensorMinutes, dataDate);
             if(glucoseData == null) {
-                realmProcessedData.close();
+                RealmProvider.release(realmConfigProcessedData);
                 return;
             }
             history.add(glucoseData);
         }
 
-        realmProcessedData.close();
+        RealmProvider.release(realmConfigProcessedData);
     }
 
     private GlucoseData makeGlucoseData(Realm realmProcessedData, int glucoseLevelRaw, int ageInSensorMinutes, long dataDate) {
@@ -179,50 +177,55 @@ public class ReadingData extends RealmObject {
         return new GlucoseData(sensor, ageInSensorMinutes, timezoneOffsetInMinutes, glucoseLevelRaw, false, dataDate);
     }
 
-    private void shiftAgeToMatchPreviousReadings(Realm realmProcessedData, ArrayList<Integer> glucoseLevels, ArrayList<Integer> ageInSensorMinutesList) {
-        // lookup previous data points from the same sensor and age
-        RealmResults<GlucoseData> previousGlucoseDataList = realmProcessedData.where(GlucoseData.class)
-                .contains(GlucoseData.ID, sensor.getTagId())
+    // the exact time when a new history value is generated is not known, therefore it can happen,
+    // that the same data point from two readings would be mapped to different ages
+    // so the ages are shifted by the offset at which the values fit the ones stored for this sensor,
+    // and only the values which do not contradict stored ones are kept, at that offset or the estimated ages if none fits
+    // returns the number of values to keep
+    private int alignHistory(Realm realmProcessedData, int[] levels, int[] ages, int count) {
+        int firstAge = ages[0] - numHistoryValues * historyIntervalInMinutes;
+        int numSlots = (ages[count - 1] - ages[0]) / historyIntervalInMinutes + 1;
+        int numPreviousSlots = numSlots + 2 * numHistoryValues;
+
+        int[] values = new int[numSlots];
+        for (int i = 0; i < count; i++) {
+            values[(ages[i] - ages[0]) / historyIntervalInMinutes] = levels[i];
+        }
+        int[] previousValues = new int[numPreviousSlots];
+        for (GlucoseData glucoseData : ProcessedDataQuery.glucoseDataOfSensor(realmProcessedData, sensorId)
                 .equalTo(GlucoseData.IS_TREND_DATA, false)
-                .greaterThanOrEqualTo(GlucoseData.AGE_IN_SENSOR_MINUTES, ageInSensorMinutesList.get(0))
-                .lessThanOrEqualTo(GlucoseData.AGE_IN_SENSOR_MINUTES, ageInSensorMinutesList.get(ageInSensorMinutesList.size() - 1))
-                .sort(GlucoseData.AGE_IN_SENSOR_MINUTES, Sort.ASCENDING)
-                .findAll();
-
-        // if there are enough previous and new data points, try to fit them together
-        // this is needed as the exact time when a new history value is generated is not known
-        // therefore it can happen, that the same data point from two readings would be mapped to different dates
-        if (previousGlucoseDataList.size() > 3 && glucoseLevels.size() > 3) {
-            int shift = 0;
-            boolean equal = listsStartEqual(glucoseLevels, previousGlucoseDataList);
-            if (!equal) {
-                shift = -1;
-                equal = listsStartEqual(glucoseLevels.subList(1, glucoseLevels.size()), previousGlucoseDataList);
-                if (!equal) {
-                    shift = 1;
-                    equal = listsStartEqual(glucoseLevels, previousGlucoseDataList.subList(1, previousGlucoseDataList.size()));
-                }
+                .between(GlucoseData.AGE_IN_SENSOR_MINUTES, firstAge, firstAge + (numPreviousSlots - 1) * historyIntervalInMinutes)
+                .findAll()) {
+            int offsetInMinutes = glucoseData.getAgeInSensorMinutes() - firstAge;
+            if (offsetInMinutes % historyIntervalInMinutes == 0) {
+                previousValues[offsetInMinutes / historyIntervalInMinutes] = glucoseData.getGlucoseLevelRaw();
             }
-            // if a match between previous and new data points was found, shift the age of the new data points to fit the previous ones
-            if (equal) {
-                if (shift != 0) {
-                    for (int c = 0; c < ageInSensorMinutesList.size(); c++) {
-                        ageInSensorMinutesList.set(c, ageInSensorMinutesList.get(c) + shift * historyIntervalInMinutes);
-                    }
-                }
-            } else {
-                throw new RuntimeException("No match found between old and new data points.");
+        }
+
+        HistoryAligner.Alignment alignment = HistoryAligner.align(values, numSlots, previousValues, numPreviousSlots, numHistoryValues);
+        if (alignment.isAligned() && alignment.shift != 0) {
+            Log.i("OpenLibre::ReadingData", String.format(Locale.US, "shifted history of reading %s by %d values (%d confirmed, confidence %.2f)",
+                    id, alignment.shift, alignment.overlap, alignment.confidence));
+            for (int i = 0; i < count; i++) {
+                ages[i] += alignment.shift * historyIntervalInMinutes;
             }
         }
-    }
 
-    private static boolean listsStartEqual(List<Integer> l1, List<GlucoseData> l2) {
-        int size = min(l1.size(), l2.size());
-        for (int i = 0; i < size; i++) {
-            if (!l1.get(i).equals(l2.get(i).getGlucoseLevelRaw()))
-                return false;
+        int numKept = 0;
+        for (int i = 0; i < count; i++) {
+            int previousValue = previousValues[(ages[i] - firstAge) / historyIntervalInMinutes];
+            if (previousValue == 0 || previousValue == levels[i]) {
+                levels[numKept] = levels[i];
+                ages[numKept] = ages[i];
+                numKept++;
+            }
         }
-        return true;
+        if (numKept < count) {
+            Log.w("OpenLibre::ReadingData", String.format(Locale.US, "%s, dropped %d history values of reading %s",
+                    alignment.isAligned() ? "Some old and new data points differ" : "No match found between old and new data points",
+                    count - numKept, id));
+        }
+        return numKept;
     }
 
     public String getId() {
@@ -249,6 +252,7 @@ public class ReadingData extends RealmObject {
         return trend;
     }
 
+
     public RealmList<GlucoseData> getHistory() {
         return history;
     }
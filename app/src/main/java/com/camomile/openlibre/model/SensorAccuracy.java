@@ -0,0 +1,191 @@
+package com.camomile.openlibre.model;
+
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+import io.realm.RealmObject;
+import io.realm.RealmResults;
+import io.realm.Sort;
+import io.realm.annotations.PrimaryKey;
+
+// accuracy of the history values of one sensor against the finger-stick values entered during its lifetime,
+// each finger-stick is compared to the nearest history value, see SensorAccuracyTask for the cache
+public class SensorAccuracy extends RealmObject {
+    public static final String SENSOR_ID = "sensorId";
+
+    public static final int numClarkeZones = 5; // A to E
+    // finger-sticks without a history value this close are not counted
+    private static final long maxPairingDistance = TimeUnit.MINUTES.toMillis(ReadingData.historyIntervalInMinutes / 2 + 1);
+
+    @PrimaryKey
+    private String sensorId;
+    // number of values the result was computed from, to tell if it is outdated,
+    // edited finger-sticks and history values dated again keep the numbers
+    private int numHistoryValues = 0;
+    private int numFingerSticks = 0;
+    private int fingerStickHash = 0;
+    private int numClockApplied = 0;
+    private int numPairs = 0;
+    private float mard = 0; // mean absolute relative difference [%]
+    private float bias = 0; // mean of sensor - finger-stick [mg/dl]
+    private int zoneA = 0;
+    private int zoneB = 0;
+    private int zoneC = 0;
+    private int zoneD = 0;
+    private int zoneE = 0;
+
+    public SensorAccuracy() {}
+
+    private SensorAccuracy(String sensorId) {
+        this.sensorId = sensorId;
+    }
+
+    public static SensorAccuracy compute(Realm realmProcessedData, Realm realmUserData, String sensorId) {
+        SensorAccuracy accuracy = new SensorAccuracy(sensorId);
+        RealmResults<TimelinePoint> history = getHistory(realmProcessedData, sensorId);
+        RealmResults<BloodGlucoseData> fingerSticks = getFingerSticks(realmProcessedData, realmUserData, sensorId);
+        accuracy.numHistoryValues = history.size();
+        accuracy.numFingerSticks = fingerSticks.size();
+        accuracy.fingerStickHash = getHash(fingerSticks);
+        accuracy.numClockApplied = SensorClock.getNumApplied(realmProcessedData, sensorId);
+        if (history.isEmpty() || fingerSticks.isEmpty()) {
+            return accuracy;
+        }
+
+        long[] dates = new long[history.size()];
+        float[] glucose = new float[history.size()]; // [mg/dl]
+        for (int i = 0; i < dates.length; i++) {
+            TimelinePoint point = history.get(i);
+            dates[i] = point.getDate();
+            glucose[i] = point.getGlucoseData().getGlucoseLevelRaw() / 10f;
+        }
+
+        double sumRelativeDifference = 0;
+        double sumDifference = 0;
+        int[] zones = new int[numClarkeZones];
+        for (BloodGlucoseData fingerStick : fingerSticks) {
+            int index = findNearest(dates, fingerStick.getDate());
+            if (Math.abs(dates[index] - fingerStick.getDate()) > maxPairingDistance || fingerStick.glucose() <= 0) {
+                continue;
+            }
+            float reference = fingerStick.glucose();
+            accuracy.numPairs++;
+            sumRelativeDifference += Math.abs(glucose[index] - reference) / reference;
+            sumDifference += glucose[index] - reference;
+            zones[getClarkeZone(reference, glucose[index])]++;
+        }
+        if (accuracy.numPairs > 0) {
+            accuracy.mard = (float) (100 * sumRelativeDifference / accuracy.numPairs);
+            accuracy.bias = (float) (sumDifference / accuracy.numPairs);
+        }
+        accuracy.zoneA = zones[0];
+        accuracy.zoneB = zones[1];
+        accuracy.zoneC = zones[2];
+        accuracy.zoneD = zones[3];
+        accuracy.zoneE = zones[4];
+        return accuracy;
+    }
+
+    // true, if the cached result still matches the stored history and finger-stick values
+    public static boolean isUpToDate(Realm realmProcessedData, Realm realmUserData, String sensorId) {
+        SensorAccuracy accuracy = realmProcessedData.where(SensorAccuracy.class).equalTo(SENSOR_ID, sensorId).findFirst();
+        if (accuracy == null
+                || accuracy.numHistoryValues != getHistory(realmProcessedData, sensorId).size()
+                || accuracy.numClockApplied != SensorClock.getNumApplied(realmProcessedData, sensorId)) {
+            return false;
+        }
+        RealmResults<BloodGlucoseData> fingerSticks = getFingerSticks(realmProcessedData, realmUserData, sensorId);
+        return accuracy.numFingerSticks == fingerSticks.size() && accuracy.fingerStickHash == getHash(fingerSticks);
+    }
+
+    // independent of the order, changes if the date or value of any finger-stick is edited
+    private static int getHash(RealmResults<BloodGlucoseData> fingerSticks) {
+        int hash = 0;
+        for (BloodGlucoseData fingerStick : fingerSticks) {
+            long date = fingerStick.getDate();
+            hash += 31 * (int) (date ^ (date >>> 32)) + Float.floatToIntBits(fingerStick.glucose());
+        }
+        return hash;
+    }
+
+    private static RealmResults<TimelinePoint> getHistory(Realm realmProcessedData, String sensorId) {
+        return realmProcessedData.where(TimelinePoint.class)
+                .equalTo(TimelinePoint.SENSOR_ID, sensorId)
+                .equalTo(TimelinePoint.IS_TREND_DATA, false)
+                .sort(TimelinePoint.DATE, Sort.ASCENDING)
+                .findAll();
+    }
+
+    private static RealmResults<BloodGlucoseData> getFingerSticks(Realm realmProcessedData, Realm realmUserData, String sensorId) {
+        SensorData sensor = realmProcessedData.where(SensorData.class).equalTo(SensorData.ID, sensorId).findFirst();
+        long startDate = sensor == null ? 0 : sensor.getStartDate();
+        long endDate = startDate + TimeUnit.MINUTES.toMillis(SensorData.maxSensorAgeInMinutes);
+        return realmUserData.where(BloodGlucoseData.class)
+                .between(BloodGlucoseData.DATE, startDate - maxPairingDistance, endDate + maxPairingDistance)
+                .findAll();
+    }
+
+    // index of the date closest to the given one, dates have to be sorted and not empty
+    static int findNearest(long[] dates, long date) {
+        int low = 0;
+        int high = dates.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (dates[middle] < date) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        // low is the first date not before the given one, or the last date
+        if (low > 0 && date - dates[low - 1] < Math.abs(dates[low] - date)) {
+            return low - 1;
+        }
+        return low;
+    }
+
+    // Clarke error grid, 0 to 4 for zone A to E, both values in mg/dl
+    static int getClarkeZone(float reference, float sensor) {
+        if ((reference <= 70 && sensor <= 70) || (sensor <= 1.2f * reference && sensor >= 0.8f * reference)) {
+            return 0;
+        }
+        if ((reference >= 180 && sensor <= 70) || (reference <= 70 && sensor >= 180)) {
+            return 4;
+        }
+        if ((reference >= 70 && reference <= 290 && sensor >= reference + 110)
+                || (reference >= 130 && reference <= 180 && sensor <= 7f / 5f * reference - 182)) {
+            return 2;
+        }
+        if ((reference >= 240 && sensor >= 70 && sensor <= 180)
+                || (reference <= 175f / 3f && sensor >= 70 && sensor <= 180)
+                || (reference >= 175f / 3f && reference <= 70 && sensor >= 6f / 5f * reference)) {
+            return 3;
+        }
+        return 1;
+    }
+
+    public String getSensorId() {
+        return sensorId;
+    }
+
+    public int getNumPairs() {
+        return numPairs;
+    }
+
+    public float getMard() {
+        return mard;
+    }
+
+    public float getBias() {
+        return bias;
+    }
+
+    // share of the pairs in zone 0 to 4 for A to E [%]
+    public float getClarkeZonePercentage(int zone) {
+        if (numPairs == 0) {
+            return 0;
+        }
+        int[] zones = {zoneA, zoneB, zoneC, zoneD, zoneE};
+        return 100f * zones[zone] / numPairs;
+    }
+}
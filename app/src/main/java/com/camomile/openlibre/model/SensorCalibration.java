@@ -0,0 +1,171 @@
+package com.camomile.openlibre.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+import io.realm.Sort;
+
+// maps the values of one sensor to the finger-stick values entered by the user with a least-squares line
+// blood glucose = slope * sensor glucose + offset through all pairs of finger-stick and sensor value
+// the calibrated values are a separate series computed in one pass over the timeline, stored values are never changed
+public class SensorCalibration {
+    // interstitial glucose follows blood glucose with a delay
+    private static final long sensorLag = TimeUnit.MINUTES.toMillis(5);
+    // a finger-stick without sensor values around it is only paired with a value this close
+    private static final long maxPairingDistance = TimeUnit.MINUTES.toMillis(ReadingData.historyIntervalInMinutes);
+    private static final long maxInterpolationDistance = TimeUnit.MINUTES.toMillis(TimelinePoint.maxMinutesWithoutGap);
+    // the paired sensor values have to spread, before a slope can be estimated, otherwise only the offset is fitted
+    private static final double minSensorVariance = 20 * 20; // [(mg/dl)^2]
+    private static final double minSlope = 0.7;
+    private static final double maxSlope = 1.3;
+
+    private final String sensorId;
+    private final long[] dates;
+    private final float[] sensorGlucose; // [mg/dl]
+    private final float[] calibratedGlucose; // [mg/dl]
+    private int numPairs = 0;
+    private float slope = 1;
+    private float offset = 0;
+
+    private SensorCalibration(String sensorId, List<TimelinePoint> timeline) {
+        this.sensorId = sensorId;
+        dates = new long[timeline.size()];
+        sensorGlucose = new float[timeline.size()];
+        calibratedGlucose = new float[timeline.size()];
+        for (int i = 0; i < dates.length; i++) {
+            TimelinePoint point = timeline.get(i);
+            dates[i] = point.getDate();
+            sensorGlucose[i] = point.getGlucoseData().getGlucoseLevelRaw() / 10f;
+        }
+    }
+
+    public static SensorCalibration calibrate(Realm realmProcessedData, Realm realmUserData, String sensorId) {
+        SensorCalibration calibration = new SensorCalibration(sensorId, SensorTimeline.getTimeline(realmProcessedData, sensorId));
+        if (calibration.dates.length > 0) {
+            long firstDate = calibration.dates[0];
+            long lastDate = calibration.dates[calibration.dates.length - 1];
+            calibration.fit(realmUserData.where(BloodGlucoseData.class)
+                    .between(BloodGlucoseData.DATE, firstDate - sensorLag - maxPairingDistance, lastDate - sensorLag + maxPairingDistance)
+                    .sort(BloodGlucoseData.DATE, Sort.ASCENDING)
+                    .findAll());
+        }
+        calibration.apply();
+        return calibration;
+    }
+
+    // the calibrations of all sensors with at least one finger-stick during their lifetime
+    public static List<SensorCalibration> calibrateAll(Realm realmProcessedData, Realm realmUserData) {
+        List<SensorCalibration> calibrations = new ArrayList<>();
+        for (SensorData sensor : realmProcessedData.where(SensorData.class).findAll()) {
+            long sensorEndDate = sensor.getStartDate() + TimeUnit.MINUTES.toMillis(SensorData.maxSensorAgeInMinutes);
+            long numFingerSticks = realmUserData.where(BloodGlucoseData.class)
+                    .between(BloodGlucoseData.DATE, sensor.getStartDate() - maxPairingDistance, sensorEndDate + maxPairingDistance)
+                    .count();
+            if (numFingerSticks == 0) {
+                continue;
+            }
+            SensorCalibration calibration = calibrate(realmProcessedData, realmUserData, sensor.getId());
+            if (calibration.isCalibrated()) {
+                calibrations.add(calibration);
+            }
+        }
+        return calibrations;
+    }
+
+    private void fit(RealmResults<BloodGlucoseData> fingerSticks) {
+        double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+        for (BloodGlucoseData fingerStick : fingerSticks) {
+            float x = getSensorGlucoseAt(fingerStick.getDate() + sensorLag);
+            if (Float.isNaN(x)) {
+                continue;
+            }
+            float y = fingerStick.glucose();
+            numPairs++;
+            sumX += x;
+            sumY += y;
+            sumXX += x * x;
+            sumXY += x * y;
+        }
+        if (numPairs == 0) {
+            return;
+        }
+
+        double meanX = sumX / numPairs;
+        double meanY = sumY / numPairs;
+        double varianceX = sumXX / numPairs - meanX * meanX;
+        double fittedSlope = 1;
+        if (numPairs >= 2 && varianceX >= minSensorVariance) {
+            fittedSlope = (sumXY / numPairs - meanX * meanY) / varianceX;
+            if (fittedSlope < minSlope || fittedSlope > maxSlope) {
+                // rather a bad finger-stick than such a wrong sensor
+                fittedSlope = 1;
+            }
+        }
+        slope = (float) fittedSlope;
+        offset = (float) (meanY - fittedSlope * meanX);
+    }
+
+    private void apply() {
+        for (int i = 0; i < sensorGlucose.length; i++) {
+            calibratedGlucose[i] = slope * sensorGlucose[i] + offset;
+        }
+    }
+
+    // linear interpolation between the surrounding values, NaN if there is no sensor value close enough
+    private float getSensorGlucoseAt(long date) {
+        int index = Arrays.binarySearch(dates, date);
+        if (index >= 0) {
+            return sensorGlucose[index];
+        }
+        int next = -index - 1;
+        int previous = next - 1;
+        if (previous >= 0 && next < dates.length && dates[next] - dates[previous] <= maxInterpolationDistance) {
+            float weight = (float) (date - dates[previous]) / (dates[next] - dates[previous]);
+            return sensorGlucose[previous] + weight * (sensorGlucose[next] - sensorGlucose[previous]);
+        }
+        if (previous >= 0 && date - dates[previous] <= maxPairingDistance) {
+            return sensorGlucose[previous];
+        }
+        if (next < dates.length && dates[next] - date <= maxPairingDistance) {
+            return sensorGlucose[next];
+        }
+        return Float.NaN;
+    }
+
+    public boolean isCalibrated() {
+        return numPairs > 0;
+    }
+
+    public String getSensorId() {
+        return sensorId;
+    }
+
+    public int getNumPairs() {
+        return numPairs;
+    }
+
+    public float getSlope() {
+        return slope;
+    }
+
+    public float getOffset() {
+        return offset;
+    }
+
+    public int size() {
+        return dates.length;
+    }
+
+    public long getDate(int index) {
+        return dates[index];
+    }
+
+    // [mg/dl]
+    public float getCalibratedGlucose(int index) {
+        return calibratedGlucose[index];
+    }
+}
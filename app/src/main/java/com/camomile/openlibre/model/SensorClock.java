@@ -0,0 +1,169 @@
+package com.camomile.openlibre.model;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+import io.realm.RealmObject;
+import io.realm.annotations.PrimaryKey;
+
+// maps the sensor age to the wall time by a least-squares line through all readings of the sensor,
+// so the dates of the values do not jump with the phone's time of every single scan
+// the fit is kept as running sums, stored values are dated again in one pass when the fit moved too far
+public class SensorClock extends RealmObject {
+    public static final String SENSOR_ID = "sensorId";
+
+    private static final double nominalSlope = TimeUnit.MINUTES.toMillis(1); // [ms / sensor minute]
+    private static final double maxDrift = 0.05;
+    // the ages have to spread over some time, before a drift can be estimated
+    private static final double minAgeVariance = 30 * 30; // [sensor minutes^2]
+    // stored values are dated again, if the fit changed their dates by more than this
+    private static final long maxDateError = TimeUnit.SECONDS.toMillis(30);
+
+    @PrimaryKey
+    private String sensorId;
+    private long startDate = -1;
+    // running sums of x = sensor age [min] and y = date - startDate [ms]
+    private int count = 0;
+    private double sumX = 0;
+    private double sumY = 0;
+    private double sumXX = 0;
+    private double sumXY = 0;
+    // fit the stored values are dated with
+    private double appliedSlope = nominalSlope;
+    private double appliedIntercept = 0;
+    private int minAgeInMinutes = Integer.MAX_VALUE;
+    private int maxAgeInMinutes = -1;
+    private int numApplied = 0; // changes whenever the stored values are dated again
+
+    public SensorClock() {}
+
+    private SensorClock(SensorData sensor) {
+        sensorId = sensor.getId();
+        startDate = sensor.getStartDate();
+    }
+
+    // every reading of a valid sensor age is part of the fit, whether values are left after parsing or not,
+    // so the values of a new reading are dated with the same fit that add() stores
+
+    // the fit including a reading that may not be stored yet, without changing the database
+    static SensorClock withReading(Realm realm, SensorData sensor, String readingId, int sensorAgeInMinutes, long date) {
+        SensorClock clock = realm.where(SensorClock.class).equalTo(SENSOR_ID, sensor.getId()).findFirst();
+        // a stored reading is part of the fit already
+        boolean addToFit = SensorData.isValidAge(sensorAgeInMinutes)
+                && realm.where(ReadingData.class).equalTo(ReadingData.ID, readingId).count() == 0;
+        if (clock != null && !addToFit) {
+            return clock;
+        }
+        clock = clock == null ? new SensorClock(sensor) : realm.copyFromRealm(clock);
+        if (addToFit) {
+            clock.addReading(sensorAgeInMinutes, date);
+        }
+        return clock;
+    }
+
+    // adds a reading to the fit and dates the stored values again if needed, has to be called
+    // inside a transaction with the managed reading, only once per reading
+    static void add(Realm realm, ReadingData readingData) {
+        if (readingData.getSensor() == null || !SensorData.isValidAge(readingData.getSensorAgeInMinutes())) {
+            return;
+        }
+        SensorClock clock = realm.where(SensorClock.class).equalTo(SENSOR_ID, readingData.getSensor().getId()).findFirst();
+        boolean isNew = clock == null;
+        if (isNew) {
+            clock = realm.copyToRealm(new SensorClock(readingData.getSensor()));
+        }
+        clock.addReading(readingData.getSensorAgeInMinutes(), readingData.getDate());
+        if (isNew) {
+            // the values of the first reading are dated with this fit already
+            clock.appliedSlope = clock.getSlope();
+            clock.appliedIntercept = clock.getIntercept(clock.appliedSlope);
+        }
+        // range of the ages of the stored values
+        int firstAgeInMinutes = readingData.getSensorAgeInMinutes();
+        if (!readingData.getHistory().isEmpty()) {
+            firstAgeInMinutes = readingData.getHistory().first().getAgeInSensorMinutes();
+        } else if (!readingData.getTrend().isEmpty()) {
+            firstAgeInMinutes = readingData.getTrend().first().getAgeInSensorMinutes();
+        }
+        clock.minAgeInMinutes = Math.min(clock.minAgeInMinutes, firstAgeInMinutes);
+        clock.maxAgeInMinutes = Math.max(clock.maxAgeInMinutes, readingData.getSensorAgeInMinutes());
+
+        // the difference of two lines is largest at one of the ends
+        if (Math.abs(clock.getDate(clock.minAgeInMinutes) - clock.getAppliedDate(clock.minAgeInMinutes)) > maxDateError
+                || Math.abs(clock.getDate(clock.maxAgeInMinutes) - clock.getAppliedDate(clock.maxAgeInMinutes)) > maxDateError) {
+            clock.apply(realm);
+        }
+    }
+
+    private void addReading(int sensorAgeInMinutes, long date) {
+        double x = sensorAgeInMinutes;
+        double y = date - startDate;
+        count++;
+        sumX += x;
+        sumY += y;
+        sumXX += x * x;
+        sumXY += x * y;
+    }
+
+    private double getSlope() {
+        if (count < 2) {
+            return nominalSlope;
+        }
+        double ageVariance = (sumXX - sumX * sumX / count) / count;
+        if (ageVariance < minAgeVariance) {
+            return nominalSlope;
+        }
+        double slope = (sumXY - sumX * sumY / count) / (ageVariance * count);
+        // the phone's time was changed or is wrong, a real sensor clock does not drift that much
+        if (Math.abs(slope / nominalSlope - 1) > maxDrift) {
+            return nominalSlope;
+        }
+        return slope;
+    }
+
+    private double getIntercept(double slope) {
+        return count == 0 ? 0 : (sumY - slope * sumX) / count;
+    }
+
+    // 0 if the values of the sensor have never been dated again
+    static int getNumApplied(Realm realm, String sensorId) {
+        SensorClock clock = realm.where(SensorClock.class).equalTo(SENSOR_ID, sensorId).findFirst();
+        return clock == null ? 0 : clock.numApplied;
+    }
+
+    long getDate(int ageInSensorMinutes) {
+        double slope = getSlope();
+        return startDate + Math.round(getIntercept(slope) + slope * ageInSensorMinutes);
+    }
+
+    private long getAppliedDate(int ageInSensorMinutes) {
+        return startDate + Math.round(appliedIntercept + appliedSlope * ageInSensorMinutes);
+    }
+
+    // dates all stored values of the sensor with the current fit in one pass and moves them
+    // to the statistics, profile and overlap buckets of their new dates
+    private void apply(Realm realm) {
+        appliedSlope = getSlope();
+        appliedIntercept = getIntercept(appliedSlope);
+        numApplied++;
+        for (GlucoseData glucoseData : ProcessedDataQuery.glucoseDataOfSensor(realm, sensorId).findAll()) {
+            glucoseData.setDate(getAppliedDate(glucoseData.getAgeInSensorMinutes()));
+        }
+        Set<Integer> changedProfileDays = new HashSet<>();
+        for (TimelinePoint point : realm.where(TimelinePoint.class)
+                .equalTo(TimelinePoint.SENSOR_ID, sensorId).findAll()) {
+            long previousDate = point.getDate();
+            point.setDate(point.getGlucoseData().getDate());
+            // only history values are counted in the statistics and the profile
+            if (!point.isTrendData()) {
+                GlucoseStatistics.redate(realm, point, previousDate, changedProfileDays);
+            }
+        }
+        GlucoseStatistics.redateProvisional(realm, sensorId);
+        AmbulatoryGlucoseProfile.rebuild(realm, changedProfileDays);
+        // the overlap windows with other sensors are taken from the dates as well
+        SensorMerge.update(realm, sensorId);
+    }
+}
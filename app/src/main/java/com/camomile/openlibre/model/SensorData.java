@@ -22,11 +22,20 @@ public class SensorData extends RealmObject {
     public SensorData() {}
 
     public SensorData(RawTagData rawTagData) {
-        id = String.format(Locale.US, "sensor_%s", rawTagData.getTagId());
+        id = generateId(rawTagData.getTagId());
         startDate = rawTagData.getDate() - (rawTagData.getDate() % TimeUnit.MINUTES.toMillis(1))
                 - TimeUnit.MINUTES.toMillis(rawTagData.getSensorAgeInMinutes());
     }
 
+    // readings of other ages have no values
+    static boolean isValidAge(int sensorAgeInMinutes) {
+        return sensorAgeInMinutes > minSensorAgeInMinutes && sensorAgeInMinutes <= maxSensorAgeInMinutes;
+    }
+
+    public static String generateId(String tagId) {
+        return String.format(Locale.US, "sensor_%s", tagId);
+    }
+
     public SensorData(SensorData sensor) {
         this.id = sensor.id;
         this.startDate = sensor.getStartDate();
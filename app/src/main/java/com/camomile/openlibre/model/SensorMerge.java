@@ -0,0 +1,212 @@
+package com.camomile.openlibre.model;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+import io.realm.RealmQuery;
+import io.realm.RealmResults;
+import io.realm.Sort;
+
+import static com.camomile.openlibre.OpenLibre.SENSOR_OVERLAP_PREFERENCE;
+
+// one wall-clock series from sensors that overlap when a new sensor is started before the old one ended:
+// for every overlap window one of both sensors is preferred and the timeline points of the other one inside
+// the window are marked as superseded, so display, export and statistics read the merged series with a plain query
+// the windows are updated with every stored reading, the points are only visited again when a window changed
+public class SensorMerge {
+
+    public enum Preference {
+        NEWEST,
+        QUALITY;
+
+        public static Preference fromPreference(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.US));
+            } catch (IllegalArgumentException | NullPointerException e) {
+                return NEWEST;
+            }
+        }
+    }
+
+    // expected MARD [%] of a sensor without enough finger-sticks, the first day of wear is known to be less accurate
+    private static final float nominalMard = 12;
+    private static final float firstDayMard = 18;
+    private static final int minPairsForAccuracy = 3;
+
+    // has to be called inside a transaction after the timeline of the sensor changed
+    static void update(Realm realm, String sensorId) {
+        Set<String> otherSensorIds = new HashSet<>();
+        // stored windows are updated as well, the sensors may not overlap anymore
+        for (SensorOverlap overlap : getOverlaps(realm, sensorId)) {
+            otherSensorIds.add(overlap.getOtherSensorId(sensorId));
+        }
+        Number firstDate = pointsOf(realm, sensorId).min(TimelinePoint.DATE);
+        Number lastDate = pointsOf(realm, sensorId).max(TimelinePoint.DATE);
+        if (firstDate != null) {
+            // one query on the date index instead of one per stored sensor
+            for (TimelinePoint point : realm.where(TimelinePoint.class)
+                    .between(TimelinePoint.DATE, firstDate.longValue(), lastDate.longValue())
+                    .notEqualTo(TimelinePoint.SENSOR_ID, sensorId)
+                    .distinct(TimelinePoint.SENSOR_ID)
+                    .findAll()) {
+                otherSensorIds.add(point.getSensorId());
+            }
+        }
+        for (String otherSensorId : otherSensorIds) {
+            updateWindow(realm, sensorId, otherSensorId, false);
+        }
+    }
+
+    // chooses the preferred sensors of all windows again after the preference changed, has to be called inside a transaction
+    public static void updateAll(Realm realm) {
+        List<SensorOverlap> overlaps = new ArrayList<>(realm.copyFromRealm(realm.where(SensorOverlap.class).findAll()));
+        for (SensorOverlap overlap : overlaps) {
+            updateWindow(realm, overlap.getOlderSensorId(), overlap.getNewerSensorId(), true);
+        }
+    }
+
+    // has to be called inside a transaction before the values of the sensor are deleted
+    static void removeSensor(Realm realm, String sensorId) {
+        List<SensorOverlap> overlaps = new ArrayList<>(realm.copyFromRealm(getOverlaps(realm, sensorId)));
+        getOverlaps(realm, sensorId).deleteAllFromRealm();
+        for (SensorOverlap overlap : overlaps) {
+            updateSuperseded(realm, overlap.getOtherSensorId(sensorId), overlap.getStartDate(), overlap.getEndDate());
+        }
+    }
+
+    // the merged series of all sensors sorted by date
+    public static RealmResults<TimelinePoint> getMergedTimeline(Realm realmProcessedData) {
+        return realmProcessedData.where(TimelinePoint.class)
+                .equalTo(TimelinePoint.IS_SUPERSEDED, false)
+                .sort(TimelinePoint.DATE, Sort.ASCENDING)
+                .findAll();
+    }
+
+    private static void updateWindow(Realm realm, String sensorIdA, String sensorIdB, boolean choosePreferredAgain) {
+        SensorData sensorA = realm.where(SensorData.class).equalTo(SensorData.ID, sensorIdA).findFirst();
+        SensorData sensorB = realm.where(SensorData.class).equalTo(SensorData.ID, sensorIdB).findFirst();
+        if (sensorA == null || sensorB == null) {
+            return;
+        }
+        SensorData olderSensor = sensorA.getStartDate() <= sensorB.getStartDate() ? sensorA : sensorB;
+        SensorData newerSensor = olderSensor == sensorA ? sensorB : sensorA;
+
+        SensorOverlap overlap = realm.where(SensorOverlap.class)
+                .equalTo(SensorOverlap.ID, SensorOverlap.generateId(olderSensor.getId(), newerSensor.getId()))
+                .findFirst();
+        long previousStartDate = overlap == null ? Long.MAX_VALUE : overlap.getStartDate();
+        long previousEndDate = overlap == null ? Long.MIN_VALUE : overlap.getEndDate();
+        String previousRejectedSensorId = overlap == null ? null : overlap.getRejectedSensorId();
+
+        long startDate = Long.MAX_VALUE;
+        long endDate = Long.MIN_VALUE;
+        Number olderFirstDate = pointsOf(realm, olderSensor.getId()).min(TimelinePoint.DATE);
+        Number newerFirstDate = pointsOf(realm, newerSensor.getId()).min(TimelinePoint.DATE);
+        if (olderFirstDate != null && newerFirstDate != null) {
+            startDate = Math.max(olderFirstDate.longValue(), newerFirstDate.longValue());
+            endDate = Math.min(pointsOf(realm, olderSensor.getId()).max(TimelinePoint.DATE).longValue(),
+                    pointsOf(realm, newerSensor.getId()).max(TimelinePoint.DATE).longValue());
+        }
+
+        if (startDate > endDate) {
+            if (overlap == null) {
+                return;
+            }
+            overlap.deleteFromRealm();
+        } else {
+            if (overlap == null) {
+                overlap = realm.copyToRealm(new SensorOverlap(olderSensor.getId(), newerSensor.getId()));
+            }
+            String rejectedSensorId = previousRejectedSensorId == null || choosePreferredAgain ?
+                    getRejectedSensorId(realm, olderSensor, newerSensor, startDate, endDate) : previousRejectedSensorId;
+            overlap.setWindow(startDate, endDate, rejectedSensorId);
+
+            if (startDate == previousStartDate && endDate >= previousEndDate && rejectedSensorId.equals(previousRejectedSensorId)) {
+                // the window only grew at its end while both sensors are scanned: the values of the preferred sensor
+                // stay as they are, only the unmarked values of the rejected sensor are left to mark, which are the ones
+                // in (previousEndDate, endDate] and history values filled into a gap of the window by this reading
+                markSuperseded(realm, rejectedSensorId, startDate, endDate);
+                return;
+            }
+        }
+
+        long fromDate = Math.min(startDate, previousStartDate);
+        long toDate = Math.max(endDate, previousEndDate);
+        updateSuperseded(realm, olderSensor.getId(), fromDate, toDate);
+        updateSuperseded(realm, newerSensor.getId(), fromDate, toDate);
+    }
+
+    // the sensor with the higher expected error, the older one for the NEWEST preference or a tie
+    private static String getRejectedSensorId(Realm realm, SensorData olderSensor, SensorData newerSensor, long startDate, long endDate) {
+        if (SENSOR_OVERLAP_PREFERENCE == Preference.QUALITY) {
+            long middleDate = startDate + (endDate - startDate) / 2;
+            if (getExpectedMard(realm, newerSensor, middleDate) > getExpectedMard(realm, olderSensor, middleDate)) {
+                return newerSensor.getId();
+            }
+        }
+        return olderSensor.getId();
+    }
+
+    private static float getExpectedMard(Realm realm, SensorData sensor, long date) {
+        SensorAccuracy accuracy = realm.where(SensorAccuracy.class)
+                .equalTo(SensorAccuracy.SENSOR_ID, sensor.getId()).findFirst();
+        if (accuracy != null && accuracy.getNumPairs() >= minPairsForAccuracy) {
+            return accuracy.getMard();
+        }
+        return date - sensor.getStartDate() < TimeUnit.DAYS.toMillis(1) ? firstDayMard : nominalMard;
+    }
+
+    private static void markSuperseded(Realm realm, String sensorId, long fromDate, long toDate) {
+        for (TimelinePoint point : pointsOf(realm, sensorId)
+                .between(TimelinePoint.DATE, fromDate, toDate)
+                .equalTo(TimelinePoint.IS_SUPERSEDED, false)
+                .findAll()) {
+            setSuperseded(realm, point, true);
+        }
+    }
+
+    // a point is superseded, if it lies in any window in which its sensor is rejected
+    private static void updateSuperseded(Realm realm, String sensorId, long fromDate, long toDate) {
+        if (fromDate > toDate) {
+            return;
+        }
+        RealmResults<SensorOverlap> rejectingOverlaps = realm.where(SensorOverlap.class)
+                .equalTo(SensorOverlap.REJECTED_SENSOR_ID, sensorId).findAll();
+        for (TimelinePoint point : pointsOf(realm, sensorId).between(TimelinePoint.DATE, fromDate, toDate).findAll()) {
+            boolean isSuperseded = false;
+            for (SensorOverlap overlap : rejectingOverlaps) {
+                isSuperseded |= overlap.contains(point.getDate());
+            }
+            if (isSuperseded != point.isSuperseded()) {
+                setSuperseded(realm, point, isSuperseded);
+            }
+        }
+    }
+
+    private static void setSuperseded(Realm realm, TimelinePoint point, boolean isSuperseded) {
+        point.setSuperseded(isSuperseded);
+        // only history values are counted in the statistics
+        if (!point.isTrendData()) {
+            GlucoseStatistics.countMerged(realm, point.getSensorId(), point.getGlucoseData(), isSuperseded ? -1 : 1);
+        }
+    }
+
+    private static RealmResults<SensorOverlap> getOverlaps(Realm realm, String sensorId) {
+        return realm.where(SensorOverlap.class)
+                .beginGroup()
+                .equalTo(SensorOverlap.OLDER_SENSOR_ID, sensorId)
+                .or()
+                .equalTo(SensorOverlap.NEWER_SENSOR_ID, sensorId)
+                .endGroup()
+                .findAll();
+    }
+
+    private static RealmQuery<TimelinePoint> pointsOf(Realm realm, String sensorId) {
+        return realm.where(TimelinePoint.class).equalTo(TimelinePoint.SENSOR_ID, sensorId);
+    }
+}
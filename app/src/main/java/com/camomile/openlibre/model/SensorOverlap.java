@@ -0,0 +1,72 @@
+package com.camomile.openlibre.model;
+
+import java.util.Locale;
+
+import io.realm.RealmObject;
+import io.realm.annotations.Index;
+import io.realm.annotations.PrimaryKey;
+
+// the time in which two sensors both have values and the sensor left out of the merged series, see SensorMerge
+public class SensorOverlap extends RealmObject {
+    public static final String ID = "id";
+    public static final String OLDER_SENSOR_ID = "olderSensorId";
+    public static final String NEWER_SENSOR_ID = "newerSensorId";
+    public static final String REJECTED_SENSOR_ID = "rejectedSensorId";
+
+    @PrimaryKey
+    private String id;
+    @Index
+    private String olderSensorId;
+    @Index
+    private String newerSensorId;
+    @Index
+    private String rejectedSensorId;
+    private long startDate;
+    private long endDate;
+
+    public SensorOverlap() {}
+
+    SensorOverlap(String olderSensorId, String newerSensorId) {
+        id = generateId(olderSensorId, newerSensorId);
+        this.olderSensorId = olderSensorId;
+        this.newerSensorId = newerSensorId;
+    }
+
+    static String generateId(String olderSensorId, String newerSensorId) {
+        return String.format(Locale.US, "overlap_%s_%s", olderSensorId, newerSensorId);
+    }
+
+    void setWindow(long startDate, long endDate, String rejectedSensorId) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.rejectedSensorId = rejectedSensorId;
+    }
+
+    boolean contains(long date) {
+        return date >= startDate && date <= endDate;
+    }
+
+    String getOtherSensorId(String sensorId) {
+        return sensorId.equals(olderSensorId) ? newerSensorId : olderSensorId;
+    }
+
+    public String getOlderSensorId() {
+        return olderSensorId;
+    }
+
+    public String getNewerSensorId() {
+        return newerSensorId;
+    }
+
+    public String getRejectedSensorId() {
+        return rejectedSensorId;
+    }
+
+    public long getStartDate() {
+        return startDate;
+    }
+
+    public long getEndDate() {
+        return endDate;
+    }
+}
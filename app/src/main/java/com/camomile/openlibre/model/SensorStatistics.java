@@ -0,0 +1,66 @@
+package com.camomile.openlibre.model;
+
+import io.realm.RealmObject;
+import io.realm.annotations.PrimaryKey;
+
+// per sensor state of GlucoseStatistics: the newest history value counted and the trend value
+// counted in place of the history value that the sensor has not stored yet
+public class SensorStatistics extends RealmObject {
+    public static final String SENSOR_ID = "sensorId";
+
+    @PrimaryKey
+    private String sensorId;
+    private int lastHistoryAgeInMinutes = -1;
+    private int lastTrendAgeInMinutes = -1;
+    private int provisionalAgeInMinutes = -1;
+    private int provisionalGlucoseLevelRaw = -1;
+    private int provisionalDay = -1;
+
+    public SensorStatistics() {}
+
+    SensorStatistics(String sensorId) {
+        this.sensorId = sensorId;
+    }
+
+    int getLastHistoryAgeInMinutes() {
+        return lastHistoryAgeInMinutes;
+    }
+
+    void setLastHistoryAgeInMinutes(int lastHistoryAgeInMinutes) {
+        this.lastHistoryAgeInMinutes = lastHistoryAgeInMinutes;
+    }
+
+    int getLastTrendAgeInMinutes() {
+        return lastTrendAgeInMinutes;
+    }
+
+    void setLastTrendAgeInMinutes(int lastTrendAgeInMinutes) {
+        this.lastTrendAgeInMinutes = lastTrendAgeInMinutes;
+    }
+
+    boolean hasProvisional() {
+        return provisionalGlucoseLevelRaw > 0;
+    }
+
+    int getProvisionalAgeInMinutes() {
+        return provisionalAgeInMinutes;
+    }
+
+    int getProvisionalGlucoseLevelRaw() {
+        return provisionalGlucoseLevelRaw;
+    }
+
+    int getProvisionalDay() {
+        return provisionalDay;
+    }
+
+    void setProvisional(int ageInSensorMinutes, int glucoseLevelRaw, int day) {
+        provisionalAgeInMinutes = ageInSensorMinutes;
+        provisionalGlucoseLevelRaw = glucoseLevelRaw;
+        provisionalDay = day;
+    }
+
+    void clearProvisional() {
+        setProvisional(-1, -1, -1);
+    }
+}
@@ -0,0 +1,161 @@
+package com.camomile.openlibre.model;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+import io.realm.Sort;
+
+// one canonical value per sensor minute over all readings, updated with every stored reading,
+// so consumers read one sorted series instead of merging the overlapping history and trend lists
+// history values replace trend values, trend values are only kept after the newest history value
+// of the sensor and a newer reading replaces the trend values of an older one
+public class SensorTimeline {
+
+    // has to be called inside a transaction with the managed reading
+    static void add(Realm realm, ReadingData readingData) {
+        if (readingData.getSensor() == null) {
+            return;
+        }
+        String sensorId = readingData.getSensor().getId();
+        int readingAgeInMinutes = readingData.getSensorAgeInMinutes();
+        int firstChangedAgeInMinutes = Integer.MAX_VALUE;
+
+        for (GlucoseData glucoseData : readingData.getHistory()) {
+            TimelinePoint point = getPoint(realm, sensorId, glucoseData.getAgeInSensorMinutes());
+            if (point.getGlucoseData() == null || point.isTrendData()) {
+                point.setGlucoseData(glucoseData, readingAgeInMinutes);
+                firstChangedAgeInMinutes = Math.min(firstChangedAgeInMinutes, point.getAgeInSensorMinutes());
+            }
+        }
+
+        Number lastHistoryAge = realm.where(TimelinePoint.class)
+                .equalTo(TimelinePoint.SENSOR_ID, sensorId)
+                .equalTo(TimelinePoint.IS_TREND_DATA, false)
+                .max(TimelinePoint.AGE_IN_SENSOR_MINUTES);
+        int lastHistoryAgeInMinutes = lastHistoryAge == null ? -1 : lastHistoryAge.intValue();
+
+        RealmResults<TimelinePoint> coveredTrend = realm.where(TimelinePoint.class)
+                .equalTo(TimelinePoint.SENSOR_ID, sensorId)
+                .equalTo(TimelinePoint.IS_TREND_DATA, true)
+                .lessThanOrEqualTo(TimelinePoint.AGE_IN_SENSOR_MINUTES, lastHistoryAgeInMinutes)
+                .sort(TimelinePoint.AGE_IN_SENSOR_MINUTES, Sort.ASCENDING)
+                .findAll();
+        if (!coveredTrend.isEmpty()) {
+            firstChangedAgeInMinutes = Math.min(firstChangedAgeInMinutes, coveredTrend.first().getAgeInSensorMinutes());
+            coveredTrend.deleteAllFromRealm();
+        }
+
+        for (GlucoseData glucoseData : readingData.getTrend()) {
+            if (glucoseData.getAgeInSensorMinutes() <= lastHistoryAgeInMinutes) {
+                continue;
+            }
+            TimelinePoint point = getPoint(realm, sensorId, glucoseData.getAgeInSensorMinutes());
+            if (point.getGlucoseData() == null || point.getReadingAgeInMinutes() < readingAgeInMinutes) {
+                point.setGlucoseData(glucoseData, readingAgeInMinutes);
+                firstChangedAgeInMinutes = Math.min(firstChangedAgeInMinutes, point.getAgeInSensorMinutes());
+            }
+        }
+
+        updateGaps(realm, sensorId, firstChangedAgeInMinutes);
+    }
+
+    // has to be called inside a transaction, before the values of the reading are deleted
+    static void remove(Realm realm, ReadingData readingData) {
+        if (readingData.getSensor() == null) {
+            return;
+        }
+        String sensorId = readingData.getSensor().getId();
+        int firstChangedAgeInMinutes = Integer.MAX_VALUE;
+        for (GlucoseData glucoseData : readingData.getHistory()) {
+            firstChangedAgeInMinutes = Math.min(firstChangedAgeInMinutes, removePoint(realm, sensorId, glucoseData));
+        }
+        for (GlucoseData glucoseData : readingData.getTrend()) {
+            // the value stays in the timeline, if another reading still has it
+            if (!TrendReferences.isShared(glucoseData)) {
+                firstChangedAgeInMinutes = Math.min(firstChangedAgeInMinutes, removePoint(realm, sensorId, glucoseData));
+            }
+        }
+        updateGaps(realm, sensorId, firstChangedAgeInMinutes);
+    }
+
+    // all sensors sorted by date
+    public static RealmResults<TimelinePoint> getTimeline(Realm realmProcessedData) {
+        return realmProcessedData.where(TimelinePoint.class)
+                .sort(TimelinePoint.DATE, Sort.ASCENDING)
+                .findAll();
+    }
+
+    public static RealmResults<TimelinePoint> getTimeline(Realm realmProcessedData, String sensorId) {
+        return realmProcessedData.where(TimelinePoint.class)
+                .equalTo(TimelinePoint.SENSOR_ID, sensorId)
+                .sort(TimelinePoint.AGE_IN_SENSOR_MINUTES, Sort.ASCENDING)
+                .findAll();
+    }
+
+    // the values of the merged series that still come from the managed reading, sorted by date
+    public static RealmResults<TimelinePoint> getPointsOfReading(Realm realmProcessedData, ReadingData readingData) {
+        return realmProcessedData.where(TimelinePoint.class)
+                .equalTo(TimelinePoint.SENSOR_ID, readingData.getSensor() == null ? null : readingData.getSensor().getId())
+                .equalTo(TimelinePoint.READING_AGE_IN_MINUTES, readingData.getSensorAgeInMinutes())
+                .equalTo(TimelinePoint.IS_SUPERSEDED, false)
+                .sort(TimelinePoint.DATE, Sort.ASCENDING)
+                .findAll();
+    }
+
+    static boolean hasHistoryValue(Realm realm, String sensorId, int ageInSensorMinutes) {
+        return realm.where(TimelinePoint.class)
+                .equalTo(TimelinePoint.ID, TimelinePoint.generateId(sensorId, ageInSensorMinutes))
+                .equalTo(TimelinePoint.IS_TREND_DATA, false)
+                .count() > 0;
+    }
+
+    static boolean isSuperseded(Realm realm, String sensorId, GlucoseData glucoseData) {
+        return realm.where(TimelinePoint.class)
+                .equalTo(TimelinePoint.ID, TimelinePoint.generateId(sensorId, glucoseData.getAgeInSensorMinutes()))
+                .equalTo(TimelinePoint.GLUCOSE_DATA + "." + GlucoseData.ID, glucoseData.getId())
+                .equalTo(TimelinePoint.IS_SUPERSEDED, true)
+                .count() > 0;
+    }
+
+    private static TimelinePoint getPoint(Realm realm, String sensorId, int ageInSensorMinutes) {
+        TimelinePoint point = realm.where(TimelinePoint.class)
+                .equalTo(TimelinePoint.ID, TimelinePoint.generateId(sensorId, ageInSensorMinutes)).findFirst();
+        if (point == null) {
+            point = realm.copyToRealm(new TimelinePoint(sensorId, ageInSensorMinutes));
+        }
+        return point;
+    }
+
+    // returns the age of the removed point or Integer.MAX_VALUE, if the value was not in the timeline
+    private static int removePoint(Realm realm, String sensorId, GlucoseData glucoseData) {
+        TimelinePoint point = realm.where(TimelinePoint.class)
+                .equalTo(TimelinePoint.ID, TimelinePoint.generateId(sensorId, glucoseData.getAgeInSensorMinutes()))
+                .equalTo(TimelinePoint.GLUCOSE_DATA + "." + GlucoseData.ID, glucoseData.getId())
+                .findFirst();
+        if (point == null) {
+            return Integer.MAX_VALUE;
+        }
+        int ageInSensorMinutes = point.getAgeInSensorMinutes();
+        point.deleteFromRealm();
+        return ageInSensorMinutes;
+    }
+
+    // the distance to the previous value changes from the first changed value to the end of the sensor
+    private static void updateGaps(Realm realm, String sensorId, int firstChangedAgeInMinutes) {
+        if (firstChangedAgeInMinutes == Integer.MAX_VALUE) {
+            return;
+        }
+        Number previousAge = realm.where(TimelinePoint.class)
+                .equalTo(TimelinePoint.SENSOR_ID, sensorId)
+                .lessThan(TimelinePoint.AGE_IN_SENSOR_MINUTES, firstChangedAgeInMinutes)
+                .max(TimelinePoint.AGE_IN_SENSOR_MINUTES);
+        int previousAgeInMinutes = previousAge == null ? -1 : previousAge.intValue();
+        for (TimelinePoint point : realm.where(TimelinePoint.class)
+                .equalTo(TimelinePoint.SENSOR_ID, sensorId)
+                .greaterThanOrEqualTo(TimelinePoint.AGE_IN_SENSOR_MINUTES, firstChangedAgeInMinutes)
+                .sort(TimelinePoint.AGE_IN_SENSOR_MINUTES, Sort.ASCENDING)
+                .findAll()) {
+            point.setMinutesSincePrevious(previousAgeInMinutes < 0 ? -1 : point.getAgeInSensorMinutes() - previousAgeInMinutes);
+            previousAgeInMinutes = point.getAgeInSensorMinutes();
+        }
+    }
+}
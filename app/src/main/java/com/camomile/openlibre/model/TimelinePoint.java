@@ -0,0 +1,105 @@
+package com.camomile.openlibre.model;
+
+import java.util.Locale;
+
+import io.realm.RealmObject;
+import io.realm.annotations.Index;
+import io.realm.annotations.PrimaryKey;
+
+// the canonical glucose value of one sensor minute, see SensorTimeline
+public class TimelinePoint extends RealmObject {
+    public static final String ID = "id";
+    public static final String SENSOR_ID = "sensorId";
+    public static final String AGE_IN_SENSOR_MINUTES = "ageInSensorMinutes";
+    public static final String DATE = "date";
+    public static final String IS_TREND_DATA = "isTrendData";
+    public static final String GLUCOSE_DATA = "glucoseData";
+    public static final String IS_SUPERSEDED = "isSuperseded";
+    public static final String READING_AGE_IN_MINUTES = "readingAgeInMinutes";
+
+    // more than one missing history value
+    public static final int maxMinutesWithoutGap = 2 * ReadingData.historyIntervalInMinutes;
+
+    @PrimaryKey
+    private String id;
+    @Index
+    private String sensorId;
+    private int ageInSensorMinutes = -1;
+    @Index
+    private long date;
+    private boolean isTrendData = false;
+    private int readingAgeInMinutes = -1; // sensor age of the reading the value comes from
+    private int minutesSincePrevious = -1; // -1 for the first value of the sensor
+    private GlucoseData glucoseData;
+    private boolean isSuperseded = false; // covered by the value of an overlapping sensor, see SensorMerge
+
+    public TimelinePoint() {}
+
+    TimelinePoint(String sensorId, int ageInSensorMinutes) {
+        id = generateId(sensorId, ageInSensorMinutes);
+        this.sensorId = sensorId;
+        this.ageInSensorMinutes = ageInSensorMinutes;
+    }
+
+    static String generateId(String sensorId, int ageInSensorMinutes) {
+        return String.format(Locale.US, "%s_%05d", sensorId, ageInSensorMinutes);
+    }
+
+    void setGlucoseData(GlucoseData glucoseData, int readingAgeInMinutes) {
+        this.glucoseData = glucoseData;
+        this.readingAgeInMinutes = readingAgeInMinutes;
+        date = glucoseData.getDate();
+        isTrendData = glucoseData.isTrendData();
+        // a new value is counted until SensorMerge has seen it
+        isSuperseded = false;
+    }
+
+    void setSuperseded(boolean isSuperseded) {
+        this.isSuperseded = isSuperseded;
+    }
+
+    void setDate(long date) {
+        this.date = date;
+    }
+
+    void setMinutesSincePrevious(int minutesSincePrevious) {
+        this.minutesSincePrevious = minutesSincePrevious;
+    }
+
+    int getReadingAgeInMinutes() {
+        return readingAgeInMinutes;
+    }
+
+    public String getSensorId() {
+        return sensorId;
+    }
+
+    public int getAgeInSensorMinutes() {
+        return ageInSensorMinutes;
+    }
+
+    public long getDate() {
+        return date;
+    }
+
+    public boolean isTrendData() {
+        return isTrendData;
+    }
+
+    public int getMinutesSincePrevious() {
+        return minutesSincePrevious;
+    }
+
+    // true if values are missing before this one, so a plot should not connect them
+    public boolean isAfterGap() {
+        return minutesSincePrevious > maxMinutesWithoutGap;
+    }
+
+    public boolean isSuperseded() {
+        return isSuperseded;
+    }
+
+    public GlucoseData getGlucoseData() {
+        return glucoseData;
+    }
+}
@@ -0,0 +1,41 @@
+package com.camomile.openlibre.model;
+
+import io.realm.Realm;
+
+// the ids of trend values include the values, so readings of the same minutes share a row if they agree on the values,
+// each row counts the readings that refer to it instead of looking them up by their trend lists, so a row is only
+// deleted with its last reading
+public class TrendReferences {
+
+    // true, if more than one reading refers to the trend value
+    static boolean isShared(GlucoseData trendValue) {
+        return trendValue.getNumTrendReferences() > 1;
+    }
+
+    // counts the references of the trend values of an unmanaged reading before it is stored, as storing it
+    // overwrites the rows with the same ids, has to be called inside a transaction
+    static void addReferences(Realm realm, ReadingData readingData, boolean isNewReading) {
+        if (!isNewReading) {
+            // the stored trend list is replaced
+            ReadingData storedReadingData = realm.where(ReadingData.class)
+                    .equalTo(ReadingData.ID, readingData.getId()).findFirst();
+            for (GlucoseData trendValue : storedReadingData.getTrend()) {
+                trendValue.setNumTrendReferences(trendValue.getNumTrendReferences() - 1);
+            }
+        }
+        for (GlucoseData trendValue : readingData.getTrend()) {
+            GlucoseData storedTrendValue = realm.where(GlucoseData.class)
+                    .equalTo(GlucoseData.ID, trendValue.getId()).findFirst();
+            trendValue.setNumTrendReferences(storedTrendValue == null ? 1 : storedTrendValue.getNumTrendReferences() + 1);
+        }
+    }
+
+    // for a reading that is deleted, the value is deleted with its last reading, has to be called inside a transaction
+    static void removeReference(GlucoseData trendValue) {
+        if (isShared(trendValue)) {
+            trendValue.setNumTrendReferences(trendValue.getNumTrendReferences() - 1);
+        } else {
+            trendValue.deleteFromRealm();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.camomile.openlibre.model;
+
+import java.util.Locale;
+
+import static com.camomile.openlibre.model.ReadingData.numTrendValues;
+
+// removes single sample noise from the 1-minute trend values before they are stored and used for the prediction
+// works on primitive arrays with preallocated buffers, one set per thread, so smoothing a scan does not allocate anything
+public class TrendSmoother {
+    public enum Filter {
+        NONE,
+        SAVITZKY_GOLAY,
+        KALMAN;
+
+        public static Filter fromPreference(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.US));
+            } catch (IllegalArgumentException | NullPointerException e) {
+                return SAVITZKY_GOLAY;
+            }
+        }
+    }
+
+    // quadratic fit over 5 points, one row per position of the smoothed point in the window
+    private static final int[][] savitzkyGolayCoefficients = {
+            {31, 9, -3, -5, 3},
+            {9, 13, 12, 6, -5},
+            {-3, 12, 17, 12, -3},
+            {-5, 6, 12, 13, 9},
+            {3, -5, -3, 9, 31},
+    };
+    private static final int savitzkyGolayNorm = 35;
+    private static final int savitzkyGolayWindow = 5;
+
+    private static final double MEASUREMENT_VARIANCE = 10 * 10; // (1 mg/dl)^2 in raw units
+    private static final double ACCELERATION_VARIANCE = 2 * 2; // (0.2 mg/dl/min^2)^2 in raw units
+
+    private static final ThreadLocal<TrendSmoother> instances = new ThreadLocal<TrendSmoother>() {
+        @Override
+        protected TrendSmoother initialValue() {
+            return new TrendSmoother();
+        }
+    };
+
+    // buffers for the trend values of one scan, filled by ReadingData
+    final int[] levels = new int[numTrendValues];
+    final int[] ages = new int[numTrendValues];
+    final int[] smoothedLevels = new int[numTrendValues];
+
+    // buffers of the Kalman smoother: filtered state and covariance, predicted covariance
+    private final double[] glucose = new double[numTrendValues];
+    private final double[] slope = new double[numTrendValues];
+    private final double[] p00 = new double[numTrendValues];
+    private final double[] p01 = new double[numTrendValues];
+    private final double[] p11 = new double[numTrendValues];
+    private final double[] predictedP00 = new double[numTrendValues];
+    private final double[] predictedP01 = new double[numTrendValues];
+    private final double[] predictedP11 = new double[numTrendValues];
+
+    private TrendSmoother() {
+    }
+
+    public static TrendSmoother getInstance() {
+        return instances.get();
+    }
+
+    // smooths the first count values of raw, oldest first, into smoothed
+    // ages are in minutes, values are usually one minute apart, unless zero values of the sensor were skipped
+    public void smooth(Filter filter, int[] raw, int[] ages, int[] smoothed, int count) {
+        if (count > numTrendValues) {
+            throw new IllegalArgumentException("at most " + numTrendValues + " trend values can be smoothed, not " + count);
+        }
+        if (filter == Filter.SAVITZKY_GOLAY && count >= savitzkyGolayWindow) {
+            smoothSavitzkyGolay(raw, ages, smoothed, count);
+        } else if (filter == Filter.KALMAN && count >= 2) {
+            smoothKalman(raw, ages, smoothed, count);
+        } else {
+            System.arraycopy(raw, 0, smoothed, 0, count);
+        }
+    }
+
+    private static void smoothSavitzkyGolay(int[] raw, int[] ages, int[] smoothed, int count) {
+        int halfWindow = savitzkyGolayWindow / 2;
+        for (int i = 0; i < count; i++) {
+            // at both ends the window stays inside the data and the fit is evaluated off center
+            int windowStart = Math.min(Math.max(i - halfWindow, 0), count - savitzkyGolayWindow);
+            // the coefficients only hold for evenly spaced values
+            if (ages[windowStart + savitzkyGolayWindow - 1] - ages[windowStart] != savitzkyGolayWindow - 1) {
+                smoothed[i] = raw[i];
+                continue;
+            }
+            int[] coefficients = savitzkyGolayCoefficients[i - windowStart];
+            int sum = 0;
+            for (int k = 0; k < savitzkyGolayWindow; k++) {
+                sum += coefficients[k] * raw[windowStart + k];
+            }
+            smoothed[i] = Math.max(0, Math.round(sum / (float) savitzkyGolayNorm));
+        }
+    }
+
+    // constant velocity Kalman filter forward, Rauch-Tung-Striebel smoother backward
+    private void smoothKalman(int[] raw, int[] ages, int[] smoothed, int count) {
+        glucose[0] = raw[0];
+        slope[0] = (raw[1] - raw[0]) / (double) Math.max(1, ages[1] - ages[0]);
+        p00[0] = MEASUREMENT_VARIANCE;
+        p01[0] = 0;
+        p11[0] = 2 * MEASUREMENT_VARIANCE;
+        for (int i = 1; i < count; i++) {
+            // time step in minutes and its process noise
+            double dt = ages[i] - ages[i - 1];
+            double q00 = ACCELERATION_VARIANCE * dt * dt * dt * dt / 4;
+            double q01 = ACCELERATION_VARIANCE * dt * dt * dt / 2;
+            double q11 = ACCELERATION_VARIANCE * dt * dt;
+
+            double g = glucose[i - 1] + dt * slope[i - 1];
+            double v = slope[i - 1];
+            double a00 = p00[i - 1] + 2 * dt * p01[i - 1] + dt * dt * p11[i - 1] + q00;
+            double a01 = p01[i - 1] + dt * p11[i - 1] + q01;
+            double a11 = p11[i - 1] + q11;
+            predictedP00[i] = a00;
+            predictedP01[i] = a01;
+            predictedP11[i] = a11;
+
+            double innovationVariance = a00 + MEASUREMENT_VARIANCE;
+            double gain0 = a00 / innovationVariance;
+            double gain1 = a01 / innovationVariance;
+            double innovation = raw[i] - g;
+            glucose[i] = g + gain0 * innovation;
+            slope[i] = v + gain1 * innovation;
+            p00[i] = (1 - gain0) * a00;
+            p01[i] = (1 - gain0) * a01;
+            p11[i] = a11 - gain1 * a01;
+        }
+
+        // the last filtered state already is the smoothed one
+        for (int i = count - 2; i >= 0; i--) {
+            // C = P[i] * F^T * inverse(predicted P[i + 1]) with F = [1 dt; 0 1]
+            double dt = ages[i + 1] - ages[i];
+            double b00 = p00[i] + dt * p01[i];
+            double b01 = p01[i];
+            double b10 = p01[i] + dt * p11[i];
+            double b11 = p11[i];
+            double determinant = predictedP00[i + 1] * predictedP11[i + 1] - predictedP01[i + 1] * predictedP01[i + 1];
+            if (determinant <= 0) {
+                continue;
+            }
+            double i00 = predictedP11[i + 1] / determinant;
+            double i01 = -predictedP01[i + 1] / determinant;
+            double i11 = predictedP00[i + 1] / determinant;
+            double c00 = b00 * i00 + b01 * i01;
+            double c01 = b00 * i01 + b01 * i11;
+            double c10 = b10 * i00 + b11 * i01;
+            double c11 = b10 * i01 + b11 * i11;
+
+            double dg = glucose[i + 1] - (glucose[i] + dt * slope[i]);
+            double dv = slope[i + 1] - slope[i];
+            glucose[i] += c00 * dg + c01 * dv;
+            slope[i] += c10 * dg + c11 * dv;
+        }
+
+        for (int i = 0; i < count; i++) {
+            smoothed[i] = (int) Math.max(0, Math.round(glucose[i]));
+        }
+    }
+}
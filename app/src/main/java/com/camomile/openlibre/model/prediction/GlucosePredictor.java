@@ -0,0 +1,24 @@
+package com.camomile.openlibre.model.prediction;
+
+// forecasts glucose from the trend values of one sensor
+// points are added in ascending order of their sensor age, each update costs O(1)
+// all glucose values are raw sensor values, all times are sensor ages in minutes
+public interface GlucosePredictor {
+    void reset();
+
+    // older points than the last one added replace the value of the same minute if the model keeps a window of points,
+    // a recursive filter ignores them
+    void update(int ageInSensorMinutes, double glucoseLevelRaw);
+
+    boolean isEmpty();
+
+    int getLastAgeInSensorMinutes();
+
+    double predict(int ageInSensorMinutes);
+
+    // raw glucose per minute at the last point
+    double getSlope();
+
+    // from 0 for a useless up to 1 for a reliable prediction
+    double getConfidence();
+}
@@ -0,0 +1,91 @@
+package com.camomile.openlibre.model.prediction;
+
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+
+// constant velocity Kalman filter over glucose level and its rate of change
+public class KalmanPredictor implements GlucosePredictor {
+    private static final double MEASUREMENT_VARIANCE = 10 * 10; // (1 mg/dl)^2 in raw units
+    private static final double ACCELERATION_VARIANCE = 0.1 * 0.1; // (0.01 mg/dl/min^2)^2 in raw units
+    private static final double INITIAL_SLOPE_VARIANCE = 5 * 5; // (0.5 mg/dl/min)^2 in raw units
+    private static final int maxGapInMinutes = 30;
+    private static final double MAX_CONFIDENCE_INTERVAL = 2;
+
+    private boolean empty = true;
+    private int lastAgeInSensorMinutes;
+    private double glucose;
+    private double slope;
+    // covariance matrix of glucose and slope
+    private double p00, p01, p11;
+
+    @Override
+    public void reset() {
+        empty = true;
+    }
+
+    @Override
+    public void update(int ageInSensorMinutes, double glucoseLevelRaw) {
+        if (!empty && ageInSensorMinutes <= lastAgeInSensorMinutes) {
+            return;
+        }
+        if (empty || ageInSensorMinutes - lastAgeInSensorMinutes > maxGapInMinutes) {
+            empty = false;
+            lastAgeInSensorMinutes = ageInSensorMinutes;
+            glucose = glucoseLevelRaw;
+            slope = 0;
+            p00 = MEASUREMENT_VARIANCE;
+            p01 = 0;
+            p11 = INITIAL_SLOPE_VARIANCE;
+            return;
+        }
+
+        // predict
+        double dt = ageInSensorMinutes - lastAgeInSensorMinutes;
+        glucose += slope * dt;
+        p00 += dt * (2 * p01 + dt * p11) + ACCELERATION_VARIANCE * dt * dt * dt * dt / 4;
+        p01 += dt * p11 + ACCELERATION_VARIANCE * dt * dt * dt / 2;
+        p11 += ACCELERATION_VARIANCE * dt * dt;
+
+        // correct
+        double innovation = glucoseLevelRaw - glucose;
+        double innovationVariance = p00 + MEASUREMENT_VARIANCE;
+        double gain0 = p00 / innovationVariance;
+        double gain1 = p01 / innovationVariance;
+        glucose += gain0 * innovation;
+        slope += gain1 * innovation;
+        p11 -= gain1 * p01;
+        p01 -= gain0 * p01;
+        p00 -= gain0 * p00;
+
+        lastAgeInSensorMinutes = ageInSensorMinutes;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    @Override
+    public int getLastAgeInSensorMinutes() {
+        return empty ? Integer.MIN_VALUE : lastAgeInSensorMinutes;
+    }
+
+    @Override
+    public double predict(int ageInSensorMinutes) {
+        return empty ? 0 : glucose + slope * (ageInSensorMinutes - lastAgeInSensorMinutes);
+    }
+
+    @Override
+    public double getSlope() {
+        return empty ? 0 : slope;
+    }
+
+    @Override
+    public double getConfidence() {
+        if (empty) {
+            return 0;
+        }
+        double slopeConfidenceInterval = 1.96 * sqrt(p11);
+        return 1.0 - min(slopeConfidenceInterval, MAX_CONFIDENCE_INTERVAL) / MAX_CONFIDENCE_INTERVAL;
+    }
+}
@@ -0,0 +1,8 @@
+package com.camomile.openlibre.model.prediction;
+
+// straight line through the latest trend values, the model OpenLibre has always used
+public class LinearPredictor extends PolynomialPredictor {
+    public LinearPredictor() {
+        super(1);
+    }
+}
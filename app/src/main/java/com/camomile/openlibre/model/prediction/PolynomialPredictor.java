@@ -0,0 +1,245 @@
+package com.camomile.openlibre.model.prediction;
+
+import org.apache.commons.math3.distribution.TDistribution;
+
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+
+// least squares polynomial fit over a sliding window of the latest points
+// the moment sums are updated when a point enters or leaves the window, so no update touches the whole window
+// the window spans scans and the fit is over the sensor age, values of a newer scan for minutes already in the
+// window replace the ones of the previous scan
+abstract class PolynomialPredictor implements GlucosePredictor {
+    private static final int maxPoints = 16;
+    private static final int maxWindowMinutes = 20;
+    private static final int maxOriginDistanceInMinutes = 1000; // keeps the power sums numerically small
+    private static final double MAX_CONFIDENCE_INTERVAL = 2;
+    private static final double[] tQuantiles = new double[maxPoints + 1];
+
+    private final int degree;
+    private final int[] ages = new int[maxPoints];
+    private final double[] values = new double[maxPoints];
+    private int first = 0;
+    private int count = 0;
+    private int origin = 0;
+
+    // sums of x^k and x^k * y with x relative to origin
+    private final double[] sumX = new double[5];
+    private final double[] sumXY = new double[3];
+    private double sumYY = 0;
+
+    private boolean dirty = true;
+    protected final double[] coefficients = new double[3];
+    private double slopeConfidenceInterval = Double.MAX_VALUE;
+
+    PolynomialPredictor(int degree) {
+        this.degree = degree;
+    }
+
+    @Override
+    public void reset() {
+        first = 0;
+        count = 0;
+        clearSums();
+        dirty = true;
+    }
+
+    @Override
+    public void update(int ageInSensorMinutes, double glucoseLevelRaw) {
+        if (count > 0 && ageInSensorMinutes <= getLastAgeInSensorMinutes()) {
+            replace(ageInSensorMinutes, glucoseLevelRaw);
+            return;
+        }
+        while (count == maxPoints || (count > 0 && ageInSensorMinutes - ages[first] >= maxWindowMinutes)) {
+            addToSums(ages[first], values[first], -1);
+            first = (first + 1) % maxPoints;
+            count--;
+        }
+        if (count == 0) {
+            origin = ageInSensorMinutes;
+            clearSums();
+        } else if (ageInSensorMinutes - origin > maxOriginDistanceInMinutes) {
+            rebase(ages[first]);
+        }
+        int index = (first + count) % maxPoints;
+        ages[index] = ageInSensorMinutes;
+        values[index] = glucoseLevelRaw;
+        count++;
+        addToSums(ageInSensorMinutes, glucoseLevelRaw, 1);
+        dirty = true;
+    }
+
+    // a newer scan smooths the trend values at the edge of the previous scan again, so its values replace
+    // the ones stored for the same minutes, or fill in minutes the previous scan did not have
+    private void replace(int ageInSensorMinutes, double glucoseLevelRaw) {
+        if (ageInSensorMinutes < ages[first]) {
+            return;
+        }
+        int position = count - 1;
+        while (ages[(first + position) % maxPoints] > ageInSensorMinutes) {
+            position--;
+        }
+        int index = (first + position) % maxPoints;
+        if (ages[index] == ageInSensorMinutes) {
+            addToSums(ageInSensorMinutes, values[index], -1);
+            values[index] = glucoseLevelRaw;
+            addToSums(ageInSensorMinutes, glucoseLevelRaw, 1);
+            dirty = true;
+            return;
+        }
+
+        // insert after position, the newer points move back by one
+        if (count == maxPoints) {
+            addToSums(ages[first], values[first], -1);
+            first = (first + 1) % maxPoints;
+            count--;
+            position--;
+        }
+        for (int i = count; i > position + 1; i--) {
+            ages[(first + i) % maxPoints] = ages[(first + i - 1) % maxPoints];
+            values[(first + i) % maxPoints] = values[(first + i - 1) % maxPoints];
+        }
+        index = (first + position + 1) % maxPoints;
+        ages[index] = ageInSensorMinutes;
+        values[index] = glucoseLevelRaw;
+        count++;
+        addToSums(ageInSensorMinutes, glucoseLevelRaw, 1);
+        dirty = true;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public int getLastAgeInSensorMinutes() {
+        return count == 0 ? Integer.MIN_VALUE : ages[(first + count - 1) % maxPoints];
+    }
+
+    int getFirstAgeInSensorMinutes() {
+        return ages[first];
+    }
+
+    @Override
+    public double predict(int ageInSensorMinutes) {
+        fit();
+        return evaluate(ageInSensorMinutes - origin);
+    }
+
+    double evaluate(double x) {
+        return coefficients[0] + x * (coefficients[1] + x * coefficients[2]);
+    }
+
+    double derivative(double x) {
+        return coefficients[1] + 2 * x * coefficients[2];
+    }
+
+    double toX(int ageInSensorMinutes) {
+        return ageInSensorMinutes - origin;
+    }
+
+    @Override
+    public double getSlope() {
+        fit();
+        return derivative(toX(getLastAgeInSensorMinutes()));
+    }
+
+    @Override
+    public double getConfidence() {
+        fit();
+        return 1.0 - min(slopeConfidenceInterval, MAX_CONFIDENCE_INTERVAL) / MAX_CONFIDENCE_INTERVAL;
+    }
+
+    private void addToSums(int ageInSensorMinutes, double y, int sign) {
+        double x = ageInSensorMinutes - origin;
+        double xPower = 1;
+        for (int k = 0; k < sumX.length; k++) {
+            sumX[k] += sign * xPower;
+            if (k < sumXY.length) {
+                sumXY[k] += sign * xPower * y;
+            }
+            xPower *= x;
+        }
+        sumYY += sign * y * y;
+    }
+
+    private void clearSums() {
+        for (int k = 0; k < sumX.length; k++) {
+            sumX[k] = 0;
+        }
+        for (int k = 0; k < sumXY.length; k++) {
+            sumXY[k] = 0;
+        }
+        sumYY = 0;
+    }
+
+    private void rebase(int newOrigin) {
+        origin = newOrigin;
+        clearSums();
+        for (int i = 0; i < count; i++) {
+            int index = (first + i) % maxPoints;
+            addToSums(ages[index], values[index], 1);
+        }
+    }
+
+    private void fit() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        coefficients[0] = count == 0 ? 0 : sumXY[0] / count;
+        coefficients[1] = 0;
+        coefficients[2] = 0;
+        slopeConfidenceInterval = Double.MAX_VALUE;
+        if (count < 2) {
+            return;
+        }
+
+        // linear fit, also used for the confidence of the slope
+        double n = sumX[0];
+        double sxx = sumX[2] - sumX[1] * sumX[1] / n;
+        double sxy = sumXY[1] - sumX[1] * sumXY[0] / n;
+        double syy = sumYY - sumXY[0] * sumXY[0] / n;
+        if (sxx <= 0) {
+            return;
+        }
+        double slope = sxy / sxx;
+        coefficients[1] = slope;
+        coefficients[0] = (sumXY[0] - slope * sumX[1]) / n;
+        if (count > 2) {
+            double meanSquaredError = Math.max(0, syy - slope * sxy) / (n - 2);
+            slopeConfidenceInterval = getTQuantile(count - 2) * sqrt(meanSquaredError / sxx);
+        }
+
+        if (degree == 2 && count > 3) {
+            fitQuadratic();
+        }
+    }
+
+    // solves the 3x3 normal equations with Cramer's rule
+    private void fitQuadratic() {
+        double a00 = sumX[0], a01 = sumX[1], a02 = sumX[2];
+        double a11 = sumX[2], a12 = sumX[3];
+        double a22 = sumX[4];
+        double b0 = sumXY[0], b1 = sumXY[1], b2 = sumXY[2];
+
+        double determinant = a00 * (a11 * a22 - a12 * a12) - a01 * (a01 * a22 - a12 * a02) + a02 * (a01 * a12 - a11 * a02);
+        if (Math.abs(determinant) < 1e-9) {
+            return;
+        }
+        coefficients[0] = (b0 * (a11 * a22 - a12 * a12) - a01 * (b1 * a22 - a12 * b2) + a02 * (b1 * a12 - a11 * b2)) / determinant;
+        coefficients[1] = (a00 * (b1 * a22 - a12 * b2) - b0 * (a01 * a22 - a12 * a02) + a02 * (a01 * b2 - b1 * a02)) / determinant;
+        coefficients[2] = (a00 * (a11 * b2 - b1 * a12) - a01 * (a01 * b2 - b1 * a02) + b0 * (a01 * a12 - a11 * a02)) / determinant;
+    }
+
+    // two-sided 95% quantile, as used by SimpleRegression.getSlopeConfidenceInterval()
+    private static double getTQuantile(int degreesOfFreedom) {
+        synchronized (tQuantiles) {
+            if (tQuantiles[degreesOfFreedom] == 0) {
+                tQuantiles[degreesOfFreedom] = new TDistribution(degreesOfFreedom).inverseCumulativeProbability(0.975);
+            }
+            return tQuantiles[degreesOfFreedom];
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.camomile.openlibre.model.prediction;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// keeps one predictor per sensor, so new scans only feed their new trend values
+public class PredictorRegistry {
+    public enum Model {
+        LINEAR,
+        KALMAN,
+        QUADRATIC;
+
+        public GlucosePredictor create() {
+            switch (this) {
+                case KALMAN:
+                    return new KalmanPredictor();
+                case QUADRATIC:
+                    return new QuadraticPredictor();
+                default:
+                    return new LinearPredictor();
+            }
+        }
+
+        public static Model fromPreference(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.US));
+            } catch (IllegalArgumentException | NullPointerException e) {
+                return LINEAR;
+            }
+        }
+    }
+
+    private static PredictorRegistry instance;
+
+    private final Map<String, GlucosePredictor> predictors = new HashMap<>();
+    private Model model = Model.LINEAR;
+
+    private PredictorRegistry() {
+    }
+
+    public static synchronized PredictorRegistry getInstance() {
+        if (instance == null) {
+            instance = new PredictorRegistry();
+        }
+        return instance;
+    }
+
+    // all predictors are dropped when a different model is selected
+    public synchronized GlucosePredictor getPredictor(String sensorId, Model model) {
+        if (model != this.model) {
+            predictors.clear();
+            this.model = model;
+        }
+        GlucosePredictor predictor = predictors.get(sensorId);
+        if (predictor == null) {
+            predictor = model.create();
+            predictors.put(sensorId, predictor);
+        }
+        return predictor;
+    }
+}
@@ -0,0 +1,24 @@
+package com.camomile.openlibre.model.prediction;
+
+// parabola through the latest trend values, follows turning points earlier than the linear model
+// the curvature is only trusted as far ahead as the window reaches back, beyond that the prediction continues linearly
+public class QuadraticPredictor extends PolynomialPredictor {
+    public QuadraticPredictor() {
+        super(2);
+    }
+
+    @Override
+    public double predict(int ageInSensorMinutes) {
+        if (isEmpty()) {
+            return 0;
+        }
+        super.predict(ageInSensorMinutes);
+        int lastAge = getLastAgeInSensorMinutes();
+        int curvedMinutes = lastAge - getFirstAgeInSensorMinutes();
+        if (ageInSensorMinutes - lastAge <= curvedMinutes) {
+            return evaluate(toX(ageInSensorMinutes));
+        }
+        double xCurvedEnd = toX(lastAge + curvedMinutes);
+        return evaluate(xCurvedEnd) + derivative(xCurvedEnd) * (toX(ageInSensorMinutes) - xCurvedEnd);
+    }
+}
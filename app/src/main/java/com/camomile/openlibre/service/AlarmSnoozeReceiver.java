@@ -0,0 +1,32 @@
+package com.camomile.openlibre.service;
+
+import android.app.NotificationManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import static com.camomile.openlibre.OpenLibre.ALARM_SNOOZE_MINUTES;
+
+// handles the snooze action of the alarm notifications
+public class AlarmSnoozeReceiver extends BroadcastReceiver {
+    private static final String LOG_ID = "OpenLibre::" + AlarmSnoozeReceiver.class.getSimpleName();
+    static final String EXTRA_ALARM = "alarm";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        GlucoseAlarmEngine.Alarm alarm;
+        try {
+            alarm = GlucoseAlarmEngine.Alarm.valueOf(intent.getStringExtra(EXTRA_ALARM));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            Log.w(LOG_ID, "unknown alarm: " + intent.getStringExtra(EXTRA_ALARM));
+            return;
+        }
+        GlucoseAlarmEngine.getInstance().snooze(alarm, ALARM_SNOOZE_MINUTES);
+
+        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (notificationManager != null) {
+            notificationManager.cancel(GlucoseAlarmNotifier.getNotificationId(alarm));
+        }
+    }
+}
@@ -7,11 +7,14 @@ import android.graphics.Color;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.RequiresApi;
 import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 
 import com.camomile.openlibre.R;
+import com.camomile.openlibre.model.GlucoseData;
 import com.camomile.openlibre.model.ReadingData;
 import com.google.firebase.messaging.FirebaseMessagingService;
 import com.google.firebase.messaging.RemoteMessage;
@@ -20,6 +23,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 public class AppMessagingService extends FirebaseMessagingService {
@@ -37,6 +41,11 @@ public class AppMessagingService extends FirebaseMessagingService {
         if (remoteMessage.getNotification() != null)
             Log.v(LOG_ID, "Notification body: " + remoteMessage.getNotification().getBody());
 
+        evaluateAlarms(remoteMessage.getData());
+        if (remoteMessage.getNotification() == null) {
+            return;
+        }
+
         notificationManager =
                 (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
 
@@ -59,6 +68,33 @@ public class AppMessagingService extends FirebaseMessagingService {
         notificationManager.notify(notificationId, notificationBuilder.build());
     }
 
+    // run the own alarms on the values of the followed device
+    private void evaluateAlarms(Map<String, String> data) {
+        if (data == null || !data.containsKey(SendMessageTask.DATA_GLUCOSE_MGDL)) {
+            return;
+        }
+        final long date;
+        final float glucose;
+        final float predictedGlucose;
+        final float trend;
+        try {
+            date = Long.parseLong(data.get(SendMessageTask.DATA_DATE));
+            glucose = GlucoseData.convertGlucoseMGDLToDisplayUnit(Float.parseFloat(data.get(SendMessageTask.DATA_GLUCOSE_MGDL)));
+            predictedGlucose = GlucoseData.convertGlucoseMGDLToDisplayUnit(Float.parseFloat(data.get(SendMessageTask.DATA_PREDICTED_GLUCOSE_MGDL)));
+            trend = GlucoseData.convertGlucoseMGDLToDisplayUnit(Float.parseFloat(data.get(SendMessageTask.DATA_TREND_MGDL)));
+        } catch (NumberFormatException | NullPointerException e) {
+            Log.w(LOG_ID, "invalid glucose data: " + data);
+            return;
+        }
+        // the alarm notifications are created on the GUI thread like for local readings
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                GlucoseAlarmEngine.getInstance().evaluate(date, glucose, predictedGlucose, trend, true);
+            }
+        });
+    }
+
     @RequiresApi(api = Build.VERSION_CODES.O)
     private void setupChannels(){
         CharSequence adminChannelName = ADMIN_CHANNEL_ID;
@@ -11,6 +11,8 @@ import com.camomile.openlibre.model.db.UserProfile;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
+import java.util.concurrent.TimeUnit;
+
 
 abstract class CloudStoreDataTask extends CloudStoreTask {
 
@@ -19,7 +21,8 @@ abstract class CloudStoreDataTask extends CloudStoreTask {
     Context context;
 
     CloudStoreDataTask(Context context, CloudStoreSynchronization cloudstoreSynchronization) {
-        super(cloudstoreSynchronization);
+        // syncing all data may take a while
+        super(cloudstoreSynchronization, Priority.SYNC, TimeUnit.MINUTES.toMillis(10));
         this.context = context;
     }
 
@@ -9,7 +9,7 @@ import android.util.Log;
 
 import java.util.Date;
 
-public class CloudStoreSynchronization implements ITaskContainer {
+public class CloudStoreSynchronization implements ITaskContainer, ReadingStream.Subscriber {
 
     private static final String LOG_ID = "OpenLibre::" + CloudStoreSynchronization.class.getSimpleName();
     public static boolean AUTOSYNC_ENABLED_DEFAULT = true;
@@ -27,6 +27,7 @@ public class CloudStoreSynchronization implements ITaskContainer {
         void finished();
     }
     private ProgressCallBack progressCallBack;
+    private Context context;
 
     private CloudStoreSynchronization() {
         progress = 0;
@@ -41,6 +42,19 @@ public class CloudStoreSynchronization implements ITaskContainer {
         return instance;
     }
 
+    // uploads every new scan, downloaded readings are already in the cloud
+    public void subscribeToReadings(Context context) {
+        this.context = context.getApplicationContext();
+        ReadingStream.getInstance().subscribe(this, ReadingStream.Delivery.MAIN_THREAD, 1);
+    }
+
+    @Override
+    public void onReading(ReadingSnapshot readingSnapshot) {
+        if (readingSnapshot.getSource() == ReadingSnapshot.Source.SCAN) {
+            startTriggeredUpload(context);
+        }
+    }
+
     void updateProgress(float progress, Date progressDate) {
         this.progress = progress;
         this.progressDate = progressDate;
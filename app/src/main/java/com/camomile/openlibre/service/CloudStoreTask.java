@@ -1,10 +1,11 @@
 package com.camomile.openlibre.service;
 
-import android.os.AsyncTask;
 import android.util.Log;
 
+import java.util.concurrent.TimeUnit;
 
-public abstract class CloudStoreTask extends AsyncTask<Void, Void, Boolean> {
+
+public abstract class CloudStoreTask extends PriorityTask<Void, Boolean> {
 
     private static final String LOG_ID = "OpenLibre::" + CloudStoreTask.class.getSimpleName();
 
@@ -15,6 +16,11 @@ public abstract class CloudStoreTask extends AsyncTask<Void, Void, Boolean> {
     protected int errorCode = NO_ERRORS;
 
     CloudStoreTask(ITaskContainer taskContainer) {
+        this(taskContainer, Priority.SYNC, TimeUnit.MINUTES.toMillis(1));
+    }
+
+    CloudStoreTask(ITaskContainer taskContainer, Priority priority, long timeout) {
+        super(priority, timeout);
         this.taskContainer = taskContainer;
     }
 
@@ -9,6 +9,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 
+import com.camomile.openlibre.RealmProvider;
 import com.camomile.openlibre.model.RawTagData;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
@@ -38,7 +39,7 @@ class CloudStoreUploadDataTask extends CloudStoreDataTask {
         String cloudstoreUploadTimestampKey = preferences.getString("upload_cloudstore_key", "upload_timestamp");
         long cloudstoreUploadTimestamp = preferences.getLong(cloudstoreUploadTimestampKey, 0);
 
-        Realm realmProcessedData = Realm.getInstance(realmConfigRawData);
+        Realm realmRawData = RealmProvider.acquire(realmConfigRawData);
 
         try {
 
@@ -51,7 +52,7 @@ class CloudStoreUploadDataTask extends CloudStoreDataTask {
             //cloudstoreSynchronization.updateProgress(0, new Date(cloudstoreUploadTimestamp));
 
             // find data that has not be uploaded yet
-            List<RawTagData> newRawData = realmProcessedData.where(RawTagData.class)
+            List<RawTagData> newRawData = realmRawData.where(RawTagData.class)
                     .greaterThan(RawTagData.DATE, cloudstoreUploadTimestamp)
                     .sort(RawTagData.DATE, Sort.ASCENDING)
                     .findAll();
@@ -91,7 +92,7 @@ class CloudStoreUploadDataTask extends CloudStoreDataTask {
             return false;
         }
         finally {
-            realmProcessedData.close();
+            RealmProvider.release(realmConfigRawData);
 
             SharedPreferences.Editor preferencesEditor = preferences.edit();
             preferencesEditor.putLong(cloudstoreUploadTimestampKey, cloudstoreUploadTimestamp);
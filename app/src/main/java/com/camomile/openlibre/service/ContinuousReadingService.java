@@ -0,0 +1,196 @@
+package com.camomile.openlibre.service;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.nfc.Tag;
+import android.os.Build;
+import android.os.IBinder;
+import android.support.annotation.RequiresApi;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.content.ContextCompat;
+import android.util.Log;
+
+import com.camomile.openlibre.R;
+import com.camomile.openlibre.model.RawTagData;
+import com.camomile.openlibre.ui.MainActivity;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// reads the last discovered tag once per minute while the phone stays on the sensor,
+// independent of the activity lifecycle
+public class ContinuousReadingService extends Service {
+    private static final String LOG_ID = "OpenLibre::" + ContinuousReadingService.class.getSimpleName();
+
+    private static final String ACTION_STOP = "com.camomile.openlibre.action.STOP_CONTINUOUS_READING";
+    private static final String EXTRA_TAG = "tag";
+    private static final String CHANNEL_ID = "CONTINUOUS_READING_CHANNEL";
+    private static final int NOTIFICATION_ID = 1;
+    private static final long readingInterval = TimeUnit.MINUTES.toMillis(1); // [ms]
+
+    private static volatile boolean running = false;
+
+    // one thread for the ticks and one for the reading, so a slow read cannot delay the schedule
+    private ScheduledExecutorService scheduler;
+    private final AtomicBoolean readingInProgress = new AtomicBoolean(false);
+    private volatile Tag tag;
+    private NotificationManager notificationManager;
+
+    private int numReadings = 0;
+    private int numFailedReadings = 0;
+    private int numSkippedTicks = 0;
+
+    public static void start(Context context, Tag tag) {
+        Intent intent = new Intent(context, ContinuousReadingService.class);
+        intent.putExtra(EXTRA_TAG, tag);
+        ContextCompat.startForegroundService(context, intent);
+    }
+
+    public static void stop(Context context) {
+        context.stopService(new Intent(context, ContinuousReadingService.class));
+    }
+
+    public static boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        running = true;
+        notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            setupChannel();
+        }
+        startForeground(NOTIFICATION_ID, buildNotification(getString(R.string.continuous_reading_started)));
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent == null || ACTION_STOP.equals(intent.getAction())) {
+            // restarted by the system without a tag or stopped from the notification
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+
+        Tag newTag = intent.getParcelableExtra(EXTRA_TAG);
+        if (newTag != null) {
+            tag = newTag;
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newScheduledThreadPool(2);
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    onTick();
+                }
+            }, 0L, readingInterval, TimeUnit.MILLISECONDS);
+        }
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        stopForeground(true);
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private void onTick() {
+        if (!readingInProgress.compareAndSet(false, true)) {
+            numSkippedTicks++;
+            Log.w(LOG_ID, "previous reading still in progress, skipping this one");
+            return;
+        }
+        try {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        readTag();
+                    } catch (Exception e) {
+                        Log.e(LOG_ID, "reading failed: " + e.toString());
+                    } finally {
+                        readingInProgress.set(false);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // scheduler shut down in the meantime
+            readingInProgress.set(false);
+        }
+    }
+
+    private void readTag() {
+        NfcVTagReader tagReader = new NfcVTagReader(this, null);
+        if (!tagReader.read(tag)) {
+            numFailedReadings++;
+            updateNotification(getString(R.string.reading_sensor_error));
+            return;
+        }
+        numReadings++;
+
+        byte[] data = tagReader.getData();
+        if (RawTagData.getSensorReadyInMinutes(data) > 0) {
+            updateNotification(getString(R.string.reading_sensor_not_ready));
+            return;
+        }
+
+        // upload, push and the GUI get the reading from the ReadingStream
+        ReadingSnapshot readingSnapshot = ReadingIngestTask.ingest(tagReader.getSensorTagId(), data);
+        if (readingSnapshot.hasTrend()) {
+            updateNotification(readingSnapshot.getGlucoseString());
+        }
+    }
+
+    private void updateNotification(String text) {
+        Log.d(LOG_ID, String.format("%s (%d readings, %d failed, %d skipped)",
+                text, numReadings, numFailedReadings, numSkippedTicks));
+        if (notificationManager != null && running) {
+            notificationManager.notify(NOTIFICATION_ID, buildNotification(text));
+        }
+    }
+
+    private Notification buildNotification(String text) {
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class), PendingIntent.FLAG_UPDATE_CURRENT);
+        PendingIntent stopIntent = PendingIntent.getService(this, 0,
+                new Intent(this, ContinuousReadingService.class).setAction(ACTION_STOP), PendingIntent.FLAG_UPDATE_CURRENT);
+
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_launcher)
+                .setContentTitle(getString(R.string.continuous_reading))
+                .setContentText(text)
+                .setContentIntent(contentIntent)
+                .addAction(0, getString(R.string.action_stop), stopIntent)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .build();
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private void setupChannel() {
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                getString(R.string.continuous_reading), NotificationManager.IMPORTANCE_LOW);
+        if (notificationManager != null) {
+            notificationManager.createNotificationChannel(channel);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.camomile.openlibre.service;
+
+import android.util.Log;
+
+import com.camomile.openlibre.model.GlucoseData;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.camomile.openlibre.OpenLibre.ALARMS_ENABLED;
+import static com.camomile.openlibre.OpenLibre.ALARM_HIGH;
+import static com.camomile.openlibre.OpenLibre.ALARM_LOW;
+import static com.camomile.openlibre.OpenLibre.ALARM_RATE_OF_CHANGE;
+import static com.camomile.openlibre.OpenLibre.ALARM_URGENT_LOW;
+
+// checks every new glucose value and its prediction against the alarm thresholds
+// an alarm becomes active when its threshold is crossed and only clears again after the value moved back
+// by the hysteresis, so a value fluctuating around the threshold does not raise the alarm again and again
+// all values are in the display unit, like the thresholds in the settings
+public class GlucoseAlarmEngine implements ReadingStream.Subscriber {
+    private static final String LOG_ID = "OpenLibre::" + GlucoseAlarmEngine.class.getSimpleName();
+
+    private static final float LEVEL_HYSTERESIS = 5; // [mg/dl]
+    private static final float RATE_OF_CHANGE_HYSTERESIS = 0.5f; // [mg/dl/min]
+    private static final long maxDataAgeInMillis = TimeUnit.MINUTES.toMillis(15); // older values do not raise alarms
+
+    public enum Alarm {
+        URGENT_LOW(true, null),
+        LOW(true, URGENT_LOW),
+        PREDICTED_LOW(true, LOW),
+        HIGH(false, null),
+        FALLING_FAST(true, null),
+        RISING_FAST(false, null);
+
+        private final boolean below;
+        // no notification while the more severe alarm is active
+        private final Alarm supersededBy;
+
+        Alarm(boolean below, Alarm supersededBy) {
+            this.below = below;
+            this.supersededBy = supersededBy;
+        }
+
+        private float threshold() {
+            switch (this) {
+                case URGENT_LOW:
+                    return ALARM_URGENT_LOW;
+                case LOW:
+                case PREDICTED_LOW:
+                    return ALARM_LOW;
+                case HIGH:
+                    return ALARM_HIGH;
+                case FALLING_FAST:
+                    return -ALARM_RATE_OF_CHANGE;
+                default:
+                    return ALARM_RATE_OF_CHANGE;
+            }
+        }
+
+        private float hysteresis() {
+            return GlucoseData.convertGlucoseMGDLToDisplayUnit(
+                    this == FALLING_FAST || this == RISING_FAST ? RATE_OF_CHANGE_HYSTERESIS : LEVEL_HYSTERESIS);
+        }
+
+        private float select(float glucose, float predictedGlucose, float rateOfChange) {
+            switch (this) {
+                case PREDICTED_LOW:
+                    return predictedGlucose;
+                case FALLING_FAST:
+                case RISING_FAST:
+                    return rateOfChange;
+                default:
+                    return glucose;
+            }
+        }
+    }
+
+    public interface Listener {
+        // remote is true for values received from a followed device
+        void onAlarm(Alarm alarm, float value, long date, boolean remote);
+
+        void onAlarmCleared(Alarm alarm);
+    }
+
+    private static GlucoseAlarmEngine instance;
+
+    private static final Alarm[] alarms = Alarm.values();
+    private final boolean[] active = new boolean[alarms.length];
+    private final boolean[] notified = new boolean[alarms.length];
+    private final long[] snoozedUntil = new long[alarms.length];
+    private long lastDate = -1;
+    private Listener listener;
+
+    private GlucoseAlarmEngine() {
+    }
+
+    public static synchronized GlucoseAlarmEngine getInstance() {
+        if (instance == null) {
+            instance = new GlucoseAlarmEngine();
+        }
+        return instance;
+    }
+
+    public void subscribeToReadings(Listener listener) {
+        setListener(listener);
+        // every value of a download batch has to reach the engine
+        ReadingStream.getInstance().subscribe(this, ReadingStream.Delivery.MAIN_THREAD, 256);
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onReading(ReadingSnapshot readingSnapshot) {
+        // imported readings were all stored before
+        if (readingSnapshot.getSource() == ReadingSnapshot.Source.IMPORT) {
+            return;
+        }
+        // every new value in order, including the history values filled in by the reading,
+        // only the latest value of the reading has a prediction and a rate of change
+        for (ReadingSnapshot.Point point : readingSnapshot.getPoints()) {
+            evaluate(point.getDate(), point.getGlucose(), Float.NaN, Float.NaN, false);
+        }
+        if (readingSnapshot.hasTrend()) {
+            evaluate(readingSnapshot.getDate(), readingSnapshot.getGlucose(), readingSnapshot.getPredictedGlucose(),
+                    GlucoseData.convertGlucoseRawToDisplayUnit((float) readingSnapshot.getTrend()), false);
+        }
+    }
+
+    // rateOfChange is per minute, values not newer than the last evaluated one are ignored
+    // a NaN prediction or rate of change leaves the state of the alarms depending on it unchanged
+    public synchronized void evaluate(long date, float glucose, float predictedGlucose, float rateOfChange, boolean remote) {
+        if (!ALARMS_ENABLED || date <= lastDate) {
+            return;
+        }
+        lastDate = date;
+
+        for (int i = 0; i < alarms.length; i++) {
+            Alarm alarm = alarms[i];
+            float value = alarm.select(glucose, predictedGlucose, rateOfChange);
+            if (Float.isNaN(value)) {
+                continue;
+            }
+            float threshold = alarm.threshold();
+            if (!active[i]) {
+                if (alarm.below ? value < threshold : value > threshold) {
+                    active[i] = true;
+                    notified[i] = false;
+                }
+            } else if (alarm.below ? value >= threshold + alarm.hysteresis() : value <= threshold - alarm.hysteresis()) {
+                active[i] = false;
+                snoozedUntil[i] = 0;
+                if (notified[i]) {
+                    notified[i] = false;
+                    Log.d(LOG_ID, alarm + " cleared");
+                    if (listener != null) {
+                        listener.onAlarmCleared(alarm);
+                    }
+                }
+            }
+        }
+
+        // old values of a backfill only update the states, they do not raise alarms anymore
+        if (System.currentTimeMillis() - date > maxDataAgeInMillis) {
+            return;
+        }
+
+        // notify after all states are updated, so a more severe alarm raised by the same value suppresses the other one
+        for (int i = 0; i < alarms.length; i++) {
+            Alarm alarm = alarms[i];
+            float value = alarm.select(glucose, predictedGlucose, rateOfChange);
+            // raised by the next value that has it
+            if (!active[i] || notified[i] || date < snoozedUntil[i] || Float.isNaN(value)) {
+                continue;
+            }
+            if (alarm.supersededBy != null && active[alarm.supersededBy.ordinal()]) {
+                continue;
+            }
+            notified[i] = true;
+            Log.i(LOG_ID, alarm + ": " + value);
+            if (listener != null) {
+                listener.onAlarm(alarm, value, date, remote);
+            }
+        }
+    }
+
+    // the alarm is raised again by the first value after the snooze time, if it is still active
+    public synchronized void snooze(Alarm alarm, int minutes) {
+        snoozedUntil[alarm.ordinal()] = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(minutes);
+        notified[alarm.ordinal()] = false;
+    }
+
+    public synchronized boolean isActive(Alarm alarm) {
+        return active[alarm.ordinal()];
+    }
+}
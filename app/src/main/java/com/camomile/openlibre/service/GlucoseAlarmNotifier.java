@@ -0,0 +1,118 @@
+package com.camomile.openlibre.service;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.media.AudioAttributes;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+import android.support.v4.app.NotificationCompat;
+
+import com.camomile.openlibre.OpenLibre;
+import com.camomile.openlibre.R;
+import com.camomile.openlibre.model.GlucoseData;
+import com.camomile.openlibre.ui.MainActivity;
+
+import java.util.Locale;
+
+import static com.camomile.openlibre.OpenLibre.ALARM_PUSH_TO_FOLLOWERS;
+
+// shows a notification with a snooze action for every raised alarm and optionally forwards it to the followers
+public class GlucoseAlarmNotifier implements GlucoseAlarmEngine.Listener {
+    private static final String CHANNEL_ID = "GLUCOSE_ALARM_CHANNEL";
+    private static final int NOTIFICATION_ID_BASE = 100; // one notification per alarm type
+
+    private final Context context;
+    private final NotificationManager notificationManager;
+
+    public GlucoseAlarmNotifier(Context context) {
+        this.context = context.getApplicationContext();
+        notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            setupChannel();
+        }
+    }
+
+    static int getNotificationId(GlucoseAlarmEngine.Alarm alarm) {
+        return NOTIFICATION_ID_BASE + alarm.ordinal();
+    }
+
+    @Override
+    public void onAlarm(GlucoseAlarmEngine.Alarm alarm, float value, long date, boolean remote) {
+        String text = getAlarmText(alarm, value);
+        showNotification(alarm, text, date);
+
+        // do not send alarms of followed devices back to them
+        if (!remote && ALARM_PUSH_TO_FOLLOWERS && OpenLibre.userProfile != null) {
+            new SendMessageTask(PushMessage.alarm(date, text), OpenLibre.userProfile.getTokens(), null).execute();
+        }
+    }
+
+    @Override
+    public void onAlarmCleared(GlucoseAlarmEngine.Alarm alarm) {
+        if (notificationManager != null) {
+            notificationManager.cancel(getNotificationId(alarm));
+        }
+    }
+
+    private String getAlarmText(GlucoseAlarmEngine.Alarm alarm, float value) {
+        String glucose = GlucoseData.formatValue(value) + " " + GlucoseData.getDisplayUnit();
+        switch (alarm) {
+            case URGENT_LOW:
+                return context.getString(R.string.alarm_urgent_low, glucose);
+            case LOW:
+                return context.getString(R.string.alarm_low, glucose);
+            case PREDICTED_LOW:
+                return context.getString(R.string.alarm_predicted_low, glucose);
+            case HIGH:
+                return context.getString(R.string.alarm_high, glucose);
+            case FALLING_FAST:
+                return context.getString(R.string.alarm_falling_fast,
+                        String.format(Locale.getDefault(), "%.1f %s", value, GlucoseData.getDisplayUnit()));
+            default:
+                return context.getString(R.string.alarm_rising_fast,
+                        String.format(Locale.getDefault(), "+%.1f %s", value, GlucoseData.getDisplayUnit()));
+        }
+    }
+
+    private void showNotification(GlucoseAlarmEngine.Alarm alarm, String text, long date) {
+        if (notificationManager == null) {
+            return;
+        }
+        PendingIntent contentIntent = PendingIntent.getActivity(context, 0,
+                new Intent(context, MainActivity.class), PendingIntent.FLAG_UPDATE_CURRENT);
+        PendingIntent snoozeIntent = PendingIntent.getBroadcast(context, alarm.ordinal(),
+                new Intent(context, AlarmSnoozeReceiver.class).putExtra(AlarmSnoozeReceiver.EXTRA_ALARM, alarm.name()),
+                PendingIntent.FLAG_UPDATE_CURRENT);
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_launcher)
+                .setContentTitle(context.getString(R.string.glucose_alarm))
+                .setContentText(text)
+                .setWhen(date)
+                .setShowWhen(true)
+                .setContentIntent(contentIntent)
+                .addAction(0, context.getString(R.string.action_snooze), snoozeIntent)
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setSound(RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM))
+                .setAutoCancel(true);
+        notificationManager.notify(getNotificationId(alarm), builder.build());
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private void setupChannel() {
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                context.getString(R.string.glucose_alarm), NotificationManager.IMPORTANCE_HIGH);
+        Uri alarmSound = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
+        channel.setSound(alarmSound, new AudioAttributes.Builder().setUsage(AudioAttributes.USAGE_ALARM).build());
+        channel.enableVibration(true);
+        if (notificationManager != null) {
+            notificationManager.createNotificationChannel(channel);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.camomile.openlibre.service;
+
+import java.util.Locale;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+public class Histogram {
+    // inclusive upper bounds of all buckets, values above the last bound go into an extra overflow bucket
+    private final long[] bounds;
+    private final long[] counts;
+    private long count = 0;
+    private long sum = 0;
+    private long minValue = Long.MAX_VALUE;
+    private long maxValue = Long.MIN_VALUE;
+
+    Histogram(long... bounds) {
+        this.bounds = bounds.clone();
+        counts = new long[bounds.length + 1];
+    }
+
+    // bounds growing by factor 2 from first to last
+    static Histogram exponential(long first, long last) {
+        int numBounds = 1;
+        for (long bound = first; bound < last; bound *= 2) {
+            numBounds++;
+        }
+        long[] bounds = new long[numBounds];
+        bounds[0] = first;
+        for (int i = 1; i < numBounds; i++) {
+            bounds[i] = min(bounds[i - 1] * 2, last);
+        }
+        return new Histogram(bounds);
+    }
+
+    synchronized void record(long value) {
+        int bucket = 0;
+        while (bucket < bounds.length && value > bounds[bucket]) {
+            bucket++;
+        }
+        counts[bucket]++;
+        count++;
+        sum += value;
+        minValue = min(minValue, value);
+        maxValue = max(maxValue, value);
+    }
+
+    synchronized void clear() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        sum = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = Long.MIN_VALUE;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getMean() {
+        return count == 0 ? 0 : sum / (double) count;
+    }
+
+    // upper bound of the bucket containing the given quantile, so the real value is at most this large
+    public synchronized long getQuantile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < bounds.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return min(bounds[bucket], maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    public synchronized String format(String unit) {
+        if (count == 0) {
+            return "no data\n";
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "n=%d  mean=%.1f  min=%d  p50<=%d  p90<=%d  p99<=%d  max=%d %s\n",
+                count, getMean(), minValue, getQuantile(0.5), getQuantile(0.9), getQuantile(0.99), maxValue, unit));
+        long lowerBound = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            if (counts[bucket] > 0) {
+                String range = bucket < bounds.length ?
+                        String.format(Locale.US, "%d-%d", lowerBound, bounds[bucket]) :
+                        String.format(Locale.US, ">%d", lowerBound - 1);
+                builder.append(String.format(Locale.US, "  %12s: %d\n", range, counts[bucket]));
+            }
+            if (bucket < bounds.length) {
+                lowerBound = bounds[bucket] + 1;
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,244 @@
+package com.camomile.openlibre.service;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.camomile.openlibre.RealmProvider;
+import com.camomile.openlibre.model.GlucoseStatistics;
+import com.camomile.openlibre.model.RawTagData;
+import com.camomile.openlibre.model.ReadingData;
+import com.camomile.openlibre.model.SensorMerge;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import io.realm.Realm;
+
+import static com.camomile.openlibre.OpenLibre.realmConfigProcessedData;
+import static com.camomile.openlibre.OpenLibre.realmConfigRawData;
+
+// the only writer of new scans and downloads into the raw and the processed Realm
+// readings are queued and stored by one thread in batches with one transaction per Realm and batch,
+// so a download catch-up commits twice instead of twice per reading and callers never wait for the write lock
+// other writes to the processed Realm that may touch many values are queued here as well, in order with the readings
+public class IngestWriter {
+    private static final String LOG_ID = "OpenLibre::" + IngestWriter.class.getSimpleName();
+    private static final int maxBatchSize = 64;
+
+    private static IngestWriter instance;
+
+    private final LinkedBlockingQueue<FutureTask<?>> queue = new LinkedBlockingQueue<>();
+
+    // completed by the writer thread once the reading is committed to both Realms
+    private static class PendingReading extends FutureTask<ReadingSnapshot> {
+        private static final Callable<ReadingSnapshot> noCallable = new Callable<ReadingSnapshot>() {
+            @Override
+            public ReadingSnapshot call() {
+                return null;
+            }
+        };
+
+        private final RawTagData rawTagData;
+        private final ReadingSnapshot.Source source;
+
+        private PendingReading(RawTagData rawTagData, ReadingSnapshot.Source source) {
+            super(noCallable);
+            this.rawTagData = rawTagData;
+            this.source = source;
+        }
+
+        @Override
+        protected void set(ReadingSnapshot readingSnapshot) {
+            super.set(readingSnapshot);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            super.setException(t);
+        }
+    }
+
+    public static synchronized IngestWriter getInstance() {
+        if (instance == null) {
+            instance = new IngestWriter();
+        }
+        return instance;
+    }
+
+    private IngestWriter() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_MORE_FAVORABLE);
+                writeLoop();
+            }
+        }, "OpenLibre-IngestWriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // rawTagData must not be managed by a Realm, it is handed over to the writer thread
+    public Future<ReadingSnapshot> submit(RawTagData rawTagData, ReadingSnapshot.Source source) {
+        PendingReading pendingReading = new PendingReading(rawTagData, source);
+        queue.add(pendingReading);
+        return pendingReading;
+    }
+
+    public List<Future<ReadingSnapshot>> submitAll(List<RawTagData> rawTagDataList, ReadingSnapshot.Source source) {
+        List<PendingReading> pendingReadings = new ArrayList<>(rawTagDataList.size());
+        for (RawTagData rawTagData : rawTagDataList) {
+            pendingReadings.add(new PendingReading(rawTagData, source));
+        }
+        queue.addAll(pendingReadings);
+        return new ArrayList<Future<ReadingSnapshot>>(pendingReadings);
+    }
+
+    // runs another write in order with the queued readings, errors are logged
+    public Future<Void> submitTask(final Callable<Void> task) {
+        FutureTask<Void> futureTask = new FutureTask<>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    return task.call();
+                } catch (Exception e) {
+                    Log.e(LOG_ID, "Task failed: " + e.toString());
+                    throw e;
+                }
+            }
+        });
+        queue.add(futureTask);
+        return futureTask;
+    }
+
+    // chooses the preferred sensor of every overlap window again
+    public Future<Void> updateSensorOverlaps() {
+        return submitTask(new Callable<Void>() {
+            @Override
+            public Void call() {
+                Realm realmProcessedData = RealmProvider.acquire(realmConfigProcessedData);
+                realmProcessedData.beginTransaction();
+                try {
+                    SensorMerge.updateAll(realmProcessedData);
+                    realmProcessedData.commitTransaction();
+                } finally {
+                    if (realmProcessedData.isInTransaction()) {
+                        realmProcessedData.cancelTransaction();
+                    }
+                    RealmProvider.release(realmConfigProcessedData);
+                }
+                return null;
+            }
+        });
+    }
+
+    private void writeLoop() {
+        ArrayList<FutureTask<?>> tasks = new ArrayList<>(maxBatchSize);
+        ArrayList<PendingReading> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            try {
+                tasks.add(queue.take());
+            } catch (InterruptedException e) {
+                Log.w(LOG_ID, "Writer thread interrupted, " + queue.size() + " writes not done");
+                return;
+            }
+            queue.drainTo(tasks, maxBatchSize - 1);
+            for (FutureTask<?> task : tasks) {
+                if (task instanceof PendingReading) {
+                    batch.add((PendingReading) task);
+                } else {
+                    // the readings queued before are stored first
+                    writeBatch(batch);
+                    task.run();
+                }
+            }
+            writeBatch(batch);
+            tasks.clear();
+        }
+    }
+
+    private void writeBatch(List<PendingReading> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            write(batch);
+        } catch (RuntimeException e) {
+            Log.e(LOG_ID, "Storing " + batch.size() + " readings failed: " + e.getMessage());
+            for (PendingReading pendingReading : batch) {
+                pendingReading.setException(e);
+            }
+        }
+        batch.clear();
+    }
+
+    private void write(List<PendingReading> batch) {
+        // released after every batch, so the processed Realm file can be deleted for a reparse in between
+        Realm realmRawData = RealmProvider.acquire(realmConfigRawData);
+        Realm realmProcessedData = RealmProvider.acquire(realmConfigProcessedData);
+        try {
+            // commit raw data into realm for debugging
+            List<RawTagData> realmRawTagDataList = new ArrayList<>(batch.size());
+            realmRawData.beginTransaction();
+            try {
+                for (PendingReading pendingReading : batch) {
+                    realmRawTagDataList.add(realmRawData.copyToRealmOrUpdate(pendingReading.rawTagData));
+                }
+                realmRawData.commitTransaction();
+            } finally {
+                if (realmRawData.isInTransaction()) {
+                    realmRawData.cancelTransaction();
+                }
+            }
+
+            // commit processed data into realm
+            // a reading that cannot be parsed fails on its own, the transaction is repeated without it,
+            // as the changes of a single reading cannot be rolled back within the transaction
+            List<ReadingData> readingDataList = storeReadings(realmProcessedData, batch, realmRawTagDataList);
+
+            // every stored reading is published in order with the values it added,
+            // subscribers that only show the current value keep just the latest one
+            for (int i = 0; i < readingDataList.size(); i++) {
+                PendingReading pendingReading = batch.get(i);
+                ReadingSnapshot readingSnapshot = new ReadingSnapshot(realmProcessedData, readingDataList.get(i), pendingReading.source);
+                ReadingStream.getInstance().publish(readingSnapshot);
+                pendingReading.set(readingSnapshot);
+            }
+        } finally {
+            RealmProvider.release(realmConfigProcessedData);
+            RealmProvider.release(realmConfigRawData);
+        }
+    }
+
+    // removes the readings that failed from batch and rawTagDataList
+    private static List<ReadingData> storeReadings(Realm realmProcessedData, List<PendingReading> batch, List<RawTagData> rawTagDataList) {
+        List<ReadingData> readingDataList = new ArrayList<>(batch.size());
+        while (true) {
+            int index = 0;
+            realmProcessedData.beginTransaction();
+            try {
+                for (; index < rawTagDataList.size(); index++) {
+                    readingDataList.add(GlucoseStatistics.storeReading(realmProcessedData, new ReadingData(rawTagDataList.get(index))));
+                }
+                realmProcessedData.commitTransaction();
+                return readingDataList;
+            } catch (RuntimeException e) {
+                if (index == rawTagDataList.size()) {
+                    // the commit failed, not a single reading
+                    throw e;
+                }
+                Log.e(LOG_ID, "Storing reading " + rawTagDataList.get(index).getId() + " failed: " + e.getMessage());
+                batch.remove(index).setException(e);
+                rawTagDataList.remove(index);
+                readingDataList.clear();
+            } finally {
+                if (realmProcessedData.isInTransaction()) {
+                    realmProcessedData.cancelTransaction();
+                }
+            }
+        }
+    }
+}
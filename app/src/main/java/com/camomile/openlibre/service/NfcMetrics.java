@@ -0,0 +1,155 @@
+package com.camomile.openlibre.service;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import com.camomile.openlibre.model.RawTagData;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Locale;
+
+// in-app store of NFC read quality measurements, used to tune block sizes and timeouts per phone model
+public class NfcMetrics {
+    private static final String LOG_ID = "OpenLibre::" + NfcMetrics.class.getSimpleName();
+    private static final String FILE_NAME = "nfc_metrics.json";
+
+    private static NfcMetrics instance;
+
+    private transient File file;
+
+    private String device = Build.MANUFACTURER + " " + Build.MODEL + " (Android " + Build.VERSION.RELEASE + ")";
+    private long numScans = 0;
+    private long numFailedScans = 0;
+    private long numDeltaScans = 0;
+    private Histogram scanDuration = Histogram.exponential(50, 20000); // [ms]
+    private Histogram commandLatency = Histogram.exponential(250, 1000000); // [us]
+    private Histogram retriesPerCommand = new Histogram(0, 1, 2, 3, 5, 10, 20, 50);
+    private Histogram bytesPerTransceive = new Histogram(9, 10, 17, 25, 33, 49, 65, 129);
+    private long[] failedAttemptsPerBlock = new long[RawTagData.numBlocks + 1];
+
+    private NfcMetrics(File file) {
+        this.file = file;
+    }
+
+    public static synchronized NfcMetrics getInstance(Context context) {
+        if (instance == null) {
+            File file = new File(context.getApplicationContext().getFilesDir(), FILE_NAME);
+            instance = load(file);
+        }
+        return instance;
+    }
+
+    private static NfcMetrics load(File file) {
+        if (file.exists()) {
+            try {
+                Reader reader = new FileReader(file);
+                try {
+                    NfcMetrics metrics = new Gson().fromJson(reader, NfcMetrics.class);
+                    if (metrics != null) {
+                        metrics.file = file;
+                        return metrics;
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException | JsonParseException e) {
+                Log.w(LOG_ID, "Could not load NFC metrics: " + e.toString());
+            }
+        }
+        return new NfcMetrics(file);
+    }
+
+    synchronized void recordTransceive(int blockIndex, int attempt, long durationNanos, int numBytes, NfcVTransceiver.Outcome outcome) {
+        switch (outcome) {
+            case SUCCESS:
+                commandLatency.record(durationNanos / 1000);
+                bytesPerTransceive.record(numBytes);
+                retriesPerCommand.record(attempt - 1);
+                break;
+            case DEADLINE:
+                retriesPerCommand.record(attempt - 1);
+                // fall through
+            default:
+                if (blockIndex >= 0 && blockIndex < failedAttemptsPerBlock.length) {
+                    failedAttemptsPerBlock[blockIndex]++;
+                }
+        }
+    }
+
+    synchronized void recordScan(long durationMillis, boolean success, boolean deltaRead) {
+        numScans++;
+        if (!success) {
+            numFailedScans++;
+        }
+        if (deltaRead) {
+            numDeltaScans++;
+        }
+        scanDuration.record(durationMillis);
+    }
+
+    public synchronized void clear() {
+        numScans = 0;
+        numFailedScans = 0;
+        numDeltaScans = 0;
+        scanDuration.clear();
+        commandLatency.clear();
+        retriesPerCommand.clear();
+        bytesPerTransceive.clear();
+        failedAttemptsPerBlock = new long[failedAttemptsPerBlock.length];
+        save();
+    }
+
+    public synchronized void save() {
+        try {
+            writeJson(file);
+        } catch (IOException e) {
+            Log.w(LOG_ID, "Could not save NFC metrics: " + e.toString());
+        }
+    }
+
+    public synchronized void export(File exportFile) throws IOException {
+        writeJson(exportFile);
+    }
+
+    private void writeJson(File outputFile) throws IOException {
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        Writer writer = new FileWriter(outputFile);
+        try {
+            gson.toJson(this, writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    public synchronized String format() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(device).append("\n\n");
+        builder.append(String.format(Locale.US, "scans: %d  failed: %d  delta reads: %d\n\n",
+                numScans, numFailedScans, numDeltaScans));
+        builder.append("scan duration\n").append(scanDuration.format("ms")).append("\n");
+        builder.append("command latency\n").append(commandLatency.format("us")).append("\n");
+        builder.append("retries per command\n").append(retriesPerCommand.format("")).append("\n");
+        builder.append("bytes per transceive\n").append(bytesPerTransceive.format("bytes")).append("\n");
+        builder.append("failed attempts per block\n");
+        boolean anyFailed = false;
+        for (int block = 0; block < failedAttemptsPerBlock.length; block++) {
+            if (failedAttemptsPerBlock[block] > 0) {
+                builder.append(String.format(Locale.US, "  block %2d: %d\n", block, failedAttemptsPerBlock[block]));
+                anyFailed = true;
+            }
+        }
+        if (!anyFailed) {
+            builder.append("none\n");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,153 @@
+package com.camomile.openlibre.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.Locale;
+
+// chooses the number of blocks read per multi-block command, calibrated per phone model and tag type
+// a calibration is only kept after a full read with its size succeeded, failing commands step down to a smaller size,
+// and after a number of clean scans the calibration is repeated, so a size lost to a transient error is found again
+class NfcReadSizeTuner {
+    private static final String LOG_ID = "OpenLibre::" + NfcReadSizeTuner.class.getSimpleName();
+    private static final String PREFERENCES_NAME = "nfc_read_size";
+
+    static final int SINGLE_BLOCK = 0; // use the addressed single-block read command
+    private static final int NOT_CALIBRATED = -1;
+
+    private static final int[] candidateSizes = {1, 2, 3, 4, 6, 8, 12};
+    private static final int numProbesPerSize = 2;
+    private static final int maxCommandErrors = 3; // commands needing retries before switching to a smaller size
+    private static final int numCleanScansBeforeRecalibration = 50;
+
+    interface Probe {
+        // reads numBlocks blocks once without retries, returns the duration in ns or -1 on error
+        long probe(int numBlocks);
+    }
+
+    private final SharedPreferences preferences;
+    private final String key;
+    private int blocksPerRead;
+    private int numCommandErrors;
+    private int numCleanScans;
+    private boolean isConfirmed; // a full read with this size succeeded
+
+    NfcReadSizeTuner(Context context, byte[] uid) {
+        preferences = context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        key = Build.MANUFACTURER + " " + Build.MODEL + "/" + getTagType(uid);
+        blocksPerRead = preferences.getInt(key + ":size", NOT_CALIBRATED);
+        numCommandErrors = preferences.getInt(key + ":errors", 0);
+        numCleanScans = preferences.getInt(key + ":clean_scans", 0);
+        isConfirmed = isCalibrated();
+    }
+
+    // the ISO 15693 UID is stored LSB first, byte 6 is the manufacturer code, byte 5 the IC reference
+    private static String getTagType(byte[] uid) {
+        if (uid == null || uid.length < 8) {
+            return "unknown";
+        }
+        return String.format(Locale.US, "%02x%02x", uid[6], uid[5]);
+    }
+
+    boolean isCalibrated() {
+        return blocksPerRead != NOT_CALIBRATED;
+    }
+
+    int getBlocksPerRead() {
+        return blocksPerRead;
+    }
+
+    // tries progressively larger block counts and keeps the one with the lowest time per block,
+    // stops at the first size for which every probe fails, the result is saved once a scan with it succeeded
+    void calibrate(Probe probe) {
+        int bestSize = SINGLE_BLOCK;
+        double bestTimePerBlock = Double.MAX_VALUE;
+        for (int size : candidateSizes) {
+            long minDuration = -1;
+            for (int i = 0; i < numProbesPerSize; i++) {
+                long duration = probe.probe(size);
+                if (duration >= 0 && (minDuration < 0 || duration < minDuration)) {
+                    minDuration = duration;
+                }
+            }
+            if (minDuration < 0) {
+                Log.d(LOG_ID, "reading " + size + " blocks failed");
+                break;
+            }
+            double timePerBlock = minDuration / (double) size;
+            Log.d(LOG_ID, String.format(Locale.US, "reading %d blocks: %.0f us per block", size, timePerBlock / 1000));
+            if (timePerBlock < bestTimePerBlock) {
+                bestTimePerBlock = timePerBlock;
+                bestSize = size;
+            }
+        }
+        Log.i(LOG_ID, "calibrated " + key + " to " + bestSize + " blocks per read");
+        blocksPerRead = bestSize;
+        numCommandErrors = 0;
+        numCleanScans = 0;
+        isConfirmed = false;
+    }
+
+    // falls back to the next smaller size when commands of the current size keep needing retries
+    void reportCommand(boolean neededRetries) {
+        if (!neededRetries || blocksPerRead == SINGLE_BLOCK) {
+            return;
+        }
+        numCommandErrors++;
+        if (numCommandErrors >= maxCommandErrors) {
+            reduceSize();
+        }
+    }
+
+    // a command that failed until the deadline falls back to the next smaller size at once
+    void reportFailedCommand() {
+        if (blocksPerRead != SINGLE_BLOCK) {
+            reduceSize();
+        }
+    }
+
+    // called after a full read succeeded, a scan without any retries forgives earlier errors
+    void reportScan(boolean clean) {
+        isConfirmed = true;
+        if (clean) {
+            numCommandErrors = 0;
+            numCleanScans++;
+        } else {
+            numCleanScans = 0;
+        }
+        if (numCleanScans >= numCleanScansBeforeRecalibration) {
+            // a larger size may work again, the next scan calibrates anew
+            Log.i(LOG_ID, "recalibrating " + key + " on the next scan");
+            blocksPerRead = NOT_CALIBRATED;
+            numCleanScans = 0;
+        }
+        save();
+    }
+
+    private void reduceSize() {
+        int smallerSize = SINGLE_BLOCK;
+        for (int size : candidateSizes) {
+            if (size < blocksPerRead) {
+                smallerSize = size;
+            }
+        }
+        Log.i(LOG_ID, "reducing " + key + " from " + blocksPerRead + " to " + smallerSize + " blocks per read");
+        blocksPerRead = smallerSize;
+        numCommandErrors = 0;
+        numCleanScans = 0;
+        // a size that was not confirmed by a full read is not saved
+        if (isConfirmed) {
+            save();
+        }
+    }
+
+    private void save() {
+        preferences.edit()
+                .putInt(key + ":size", blocksPerRead)
+                .putInt(key + ":errors", numCommandErrors)
+                .putInt(key + ":clean_scans", numCleanScans)
+                .apply();
+    }
+}
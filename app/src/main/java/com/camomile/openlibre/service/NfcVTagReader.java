@@ -0,0 +1,241 @@
+package com.camomile.openlibre.service;
+
+import android.content.Context;
+import android.nfc.Tag;
+import android.nfc.tech.NfcV;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import com.camomile.openlibre.OpenLibre;
+import com.camomile.openlibre.RealmProvider;
+import com.camomile.openlibre.model.RawTagData;
+import io.realm.Realm;
+import io.realm.Sort;
+
+import static com.camomile.openlibre.OpenLibre.realmConfigRawData;
+import static com.camomile.openlibre.model.AlgorithmUtil.bytesToHexString;
+import static java.lang.Math.min;
+
+// reads the FRAM of a sensor tag, independent of any activity so it can also run in a service
+public class NfcVTagReader implements NfcVTransceiver.Listener {
+    private static final String LOG_ID = "OpenLibre::" + NfcVTagReader.class.getSimpleName();
+
+    public interface ProgressListener {
+        void onProgress(int blockIndex);
+    }
+
+    private Context context;
+    private ProgressListener progressListener;
+    private NfcMetrics nfcMetrics;
+    private String sensorTagId;
+    private byte[] data;
+    private boolean deltaRead = false;
+    private NfcReadSizeTuner readSizeTuner = null;
+    private boolean neededRetries = false;
+
+    public NfcVTagReader(Context context, ProgressListener progressListener) {
+        this.context = context.getApplicationContext();
+        this.progressListener = progressListener;
+        nfcMetrics = NfcMetrics.getInstance(context);
+        data = new byte[360];
+    }
+
+    // blocking, must not be called from the GUI thread
+    public boolean read(Tag tag) {
+        sensorTagId = bytesToHexString(tag.getId());
+        long startTime = SystemClock.elapsedRealtime();
+        boolean success = readNfcTag(tag);
+        nfcMetrics.recordScan(SystemClock.elapsedRealtime() - startTime, success, deltaRead);
+        nfcMetrics.save();
+        return success;
+    }
+
+    public String getSensorTagId() {
+        return sensorTagId;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    private boolean readNfcTag(Tag tag) {
+        notifyProgress(0);
+        byte[] previousData = OpenLibre.NFC_USE_DELTA_READ ? findPreviousData(sensorTagId) : null;
+        NfcVTransceiver transceiver = new NfcVTransceiver(NfcV.get(tag), NfcVTransceiver.RetryPolicy.DEFAULT, this);
+        Log.d(LOG_ID, "Attempting to read tag data");
+        try {
+            transceiver.connect();
+            final byte[] uid = tag.getId();
+
+            if (OpenLibre.NFC_USE_MULTI_BLOCK_READ && OpenLibre.NFC_AUTO_TUNE_READ_SIZE) {
+                readSizeTuner = new NfcReadSizeTuner(context, uid);
+                if (!readSizeTuner.isCalibrated()) {
+                    calibrateReadSize(transceiver);
+                }
+            }
+
+            boolean[] blocks = new boolean[RawTagData.numBlocks + 1];
+            if (previousData != null) {
+                // read header and indices first and splice unchanged blocks from the previous reading
+                System.arraycopy(previousData, 0, data, 0, min(previousData.length, data.length));
+                RawTagData.markIndexBlocks(blocks);
+                if (!readBlocks(transceiver, uid, blocks)) {
+                    return false;
+                }
+                boolean[] changedBlocks = new boolean[blocks.length];
+                if (RawTagData.markChangedBlocks(previousData, data, changedBlocks)) {
+                    for (int block = 0; block < blocks.length; block++) {
+                        changedBlocks[block] &= !blocks[block];
+                    }
+                    Log.d(LOG_ID, "Reading only changed blocks");
+                    blocks = changedBlocks;
+                    deltaRead = true;
+                } else {
+                    Log.d(LOG_ID, "Changes since previous reading unknown, reading all blocks");
+                    previousData = null;
+                }
+            }
+            if (previousData == null) {
+                // multi-block reads have always included block 41
+                int numBlocks = getBlocksPerRead() != NfcReadSizeTuner.SINGLE_BLOCK ? RawTagData.numBlocks + 1 : RawTagData.numBlocks;
+                Arrays.fill(blocks, false);
+                Arrays.fill(blocks, 0, numBlocks, true);
+            }
+            if (!readBlocks(transceiver, uid, blocks)) {
+                return false;
+            }
+            Log.d(LOG_ID, "Got NFC tag data");
+            if (readSizeTuner != null) {
+                readSizeTuner.reportScan(!neededRetries);
+            }
+
+        } catch (Exception e) {
+
+            Log.i(LOG_ID, e.toString());
+            return false;
+
+        } finally {
+            try {
+                transceiver.close();
+            } catch (Exception e) {
+                Log.e(LOG_ID, "Error closing tag!");
+            }
+            Log.d(LOG_ID, "Transceive statistics: " + transceiver);
+        }
+        Log.d(LOG_ID, "Tag data reader exiting");
+        return true;
+    }
+
+    private boolean readBlocks(NfcVTransceiver transceiver, byte[] uid, boolean[] blocks) {
+        final int blockSize = RawTagData.blockSize;
+
+        int blockIndex = 0;
+        while (blockIndex < blocks.length) {
+            if (!blocks[blockIndex]) {
+                blockIndex++;
+                continue;
+            }
+            // the tuner may switch to a smaller size during the read
+            final int maxBlocksPerRead = getBlocksPerRead();
+            final boolean singleBlockRead = maxBlocksPerRead == NfcReadSizeTuner.SINGLE_BLOCK;
+
+            // combine consecutive blocks into one multi-block read
+            int numBlocks = 1;
+            while (numBlocks < maxBlocksPerRead && blockIndex + numBlocks < blocks.length && blocks[blockIndex + numBlocks]) {
+                numBlocks++;
+            }
+
+            byte[] cmd;
+            int responseOffset;
+            if (singleBlockRead) {
+                cmd = singleBlockReadCommand(uid, blockIndex);
+                responseOffset = 2;
+            } else {
+                cmd = multiBlockReadCommand(blockIndex, numBlocks);
+                responseOffset = 1;
+            }
+
+            // on errors the transceiver retries and resumes at this block until its deadline
+            byte[] readData = transceiver.transceive(cmd, blockIndex, numBlocks, responseOffset + numBlocks * blockSize);
+            if (readData == null) {
+                if (readSizeTuner != null) {
+                    readSizeTuner.reportFailedCommand();
+                }
+                return false;
+            }
+            if (transceiver.getLastNumAttempts() > 1) {
+                neededRetries = true;
+                if (readSizeTuner != null) {
+                    readSizeTuner.reportCommand(true);
+                }
+            }
+
+            System.arraycopy(readData, responseOffset, data, blockIndex * blockSize, numBlocks * blockSize);
+
+            blockIndex += numBlocks;
+            notifyProgress(blockIndex - 1);
+        }
+        return true;
+    }
+
+    private int getBlocksPerRead() {
+        if (readSizeTuner != null) {
+            return readSizeTuner.getBlocksPerRead();
+        }
+        return OpenLibre.NFC_USE_MULTI_BLOCK_READ ? 3 : NfcReadSizeTuner.SINGLE_BLOCK;
+    }
+
+    private void calibrateReadSize(final NfcVTransceiver transceiver) {
+        // the maximum transceive length only limits the command, the response size limit is found by probing
+        readSizeTuner.calibrate(new NfcReadSizeTuner.Probe() {
+            @Override
+            public long probe(int numBlocks) {
+                long startTime = System.nanoTime();
+                byte[] readData = transceiver.transceiveOnce(multiBlockReadCommand(0, numBlocks), 1 + numBlocks * RawTagData.blockSize);
+                return readData == null ? -1 : System.nanoTime() - startTime;
+            }
+        });
+    }
+
+    private static byte[] multiBlockReadCommand(int blockIndex, int numBlocks) {
+        return new byte[]{0x02, 0x23, (byte) blockIndex, (byte) (numBlocks - 1)};
+    }
+
+    private static byte[] singleBlockReadCommand(byte[] uid, int blockIndex) {
+        byte[] cmd = new byte[]{0x60, 0x20, 0, 0, 0, 0, 0, 0, 0, 0, (byte) blockIndex, 0};
+        System.arraycopy(uid, 0, cmd, 2, 8);
+        return cmd;
+    }
+
+    @Override
+    public void onTransceive(int blockIndex, int numBlocks, int attempt, long durationNanos, int numBytes, NfcVTransceiver.Outcome outcome) {
+        nfcMetrics.recordTransceive(blockIndex, attempt, durationNanos, numBytes, outcome);
+        if (outcome != NfcVTransceiver.Outcome.SUCCESS || attempt > 1) {
+            Log.v(LOG_ID, String.format(Locale.US, "block %d (+%d): attempt %d %s after %d us",
+                    blockIndex, numBlocks - 1, attempt, outcome, TimeUnit.NANOSECONDS.toMicros(durationNanos)));
+        }
+    }
+
+    private static byte[] findPreviousData(String sensorTagId) {
+        Realm realmRawData = RealmProvider.acquire(realmConfigRawData);
+        try {
+            RawTagData previousRawTagData = realmRawData.where(RawTagData.class)
+                    .equalTo(RawTagData.TAG_ID, sensorTagId)
+                    .sort(RawTagData.DATE, Sort.DESCENDING)
+                    .findFirst();
+            return previousRawTagData == null ? null : previousRawTagData.getData().clone();
+        } finally {
+            RealmProvider.release(realmConfigRawData);
+        }
+    }
+
+    private void notifyProgress(int blockIndex) {
+        if (progressListener != null) {
+            progressListener.onProgress(blockIndex);
+        }
+    }
+}
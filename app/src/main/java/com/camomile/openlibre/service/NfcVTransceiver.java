@@ -0,0 +1,176 @@
+package com.camomile.openlibre.service;
+
+import android.nfc.tech.NfcV;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import static java.lang.Math.min;
+
+class NfcVTransceiver {
+    private static final String LOG_ID = "OpenLibre::" + NfcVTransceiver.class.getSimpleName();
+
+    enum Outcome {
+        SUCCESS,
+        RETRY,
+        RECONNECT,
+        DEADLINE
+    }
+
+    interface Listener {
+        void onTransceive(int blockIndex, int numBlocks, int attempt, long durationNanos, int numBytes, Outcome outcome);
+    }
+
+    static class RetryPolicy {
+        static final RetryPolicy DEFAULT = new RetryPolicy(6, 5, 2, 100, 5000);
+
+        final int maxAttemptsPerCommand;
+        final long initialBackoff; // [ms]
+        final int backoffMultiplier;
+        final long maxBackoff; // [ms]
+        final long deadline; // [ms] for all commands of one tag read
+
+        RetryPolicy(int maxAttemptsPerCommand, long initialBackoff, int backoffMultiplier, long maxBackoff, long deadline) {
+            this.maxAttemptsPerCommand = maxAttemptsPerCommand;
+            this.initialBackoff = initialBackoff;
+            this.backoffMultiplier = backoffMultiplier;
+            this.maxBackoff = maxBackoff;
+            this.deadline = deadline;
+        }
+    }
+
+    private final NfcV nfcvTag;
+    private final RetryPolicy retryPolicy;
+    private final Listener listener;
+    private long deadlineTime;
+
+    private int numCommands = 0;
+    private int numAttempts = 0;
+    private int numRetries = 0;
+    private int numReconnects = 0;
+    private int numBytes = 0;
+    private int lastNumAttempts = 0;
+
+    NfcVTransceiver(NfcV nfcvTag, RetryPolicy retryPolicy, Listener listener) {
+        this.nfcvTag = nfcvTag;
+        this.retryPolicy = retryPolicy;
+        this.listener = listener;
+    }
+
+    void connect() throws IOException {
+        deadlineTime = SystemClock.elapsedRealtime() + retryPolicy.deadline;
+        nfcvTag.connect();
+    }
+
+    void close() throws IOException {
+        nfcvTag.close();
+    }
+
+    // sends cmd until a response of at least minResponseLength bytes is received
+    // after maxAttemptsPerCommand failed attempts the tag is reconnected and the same command is resumed,
+    // so blocks that were read successfully before are kept
+    // returns null, if no valid response could be received before the deadline
+    byte[] transceive(byte[] cmd, int blockIndex, int numBlocks, int minResponseLength) {
+        numCommands++;
+        int attempt = 0;
+        long backoff = retryPolicy.initialBackoff;
+        while (true) {
+            attempt++;
+            numAttempts++;
+            lastNumAttempts = attempt;
+            long startTime = System.nanoTime();
+            byte[] response = null;
+            try {
+                response = nfcvTag.transceive(cmd);
+            } catch (IOException e) {
+                // tag lost for a moment or response garbled, try again
+            }
+            long duration = System.nanoTime() - startTime;
+
+            if (response != null && response.length >= minResponseLength) {
+                numBytes += response.length;
+                notifyListener(blockIndex, numBlocks, attempt, duration, response.length, Outcome.SUCCESS);
+                return response;
+            }
+
+            long timeLeft = deadlineTime - SystemClock.elapsedRealtime();
+            if (timeLeft <= 0) {
+                Log.e(LOG_ID, "tag read timeout at block " + blockIndex);
+                notifyListener(blockIndex, numBlocks, attempt, duration, 0, Outcome.DEADLINE);
+                return null;
+            }
+
+            if (attempt % retryPolicy.maxAttemptsPerCommand == 0) {
+                notifyListener(blockIndex, numBlocks, attempt, duration, 0, Outcome.RECONNECT);
+                reconnect();
+                backoff = retryPolicy.initialBackoff;
+                continue;
+            }
+
+            numRetries++;
+            notifyListener(blockIndex, numBlocks, attempt, duration, 0, Outcome.RETRY);
+            if (!sleep(min(backoff, timeLeft))) {
+                return null;
+            }
+            backoff = min(backoff * retryPolicy.backoffMultiplier, retryPolicy.maxBackoff);
+        }
+    }
+
+    // single attempt without retries, used to probe what the tag and phone support
+    // returns null on any error, after reconnecting so the next command starts from a clean state
+    byte[] transceiveOnce(byte[] cmd, int minResponseLength) {
+        numCommands++;
+        numAttempts++;
+        lastNumAttempts = 1;
+        byte[] response = null;
+        try {
+            response = nfcvTag.transceive(cmd);
+        } catch (IOException e) {
+            // handled below
+        }
+        if (response == null || response.length < minResponseLength) {
+            reconnect();
+            return null;
+        }
+        numBytes += response.length;
+        return response;
+    }
+
+    int getLastNumAttempts() {
+        return lastNumAttempts;
+    }
+
+    private void reconnect() {
+        numReconnects++;
+        try {
+            nfcvTag.close();
+            nfcvTag.connect();
+        } catch (IOException e) {
+            Log.d(LOG_ID, "reconnect failed: " + e.toString());
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void notifyListener(int blockIndex, int numBlocks, int attempt, long durationNanos, int numBytes, Outcome outcome) {
+        if (listener != null) {
+            listener.onTransceive(blockIndex, numBlocks, attempt, durationNanos, numBytes, outcome);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d commands, %d attempts, %d retries, %d reconnects, %d bytes",
+                numCommands, numAttempts, numRetries, numReconnects, numBytes);
+    }
+}
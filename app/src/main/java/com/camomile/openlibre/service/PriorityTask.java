@@ -0,0 +1,246 @@
+package com.camomile.openlibre.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.camomile.openlibre.RealmProvider;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// replacement for AsyncTask with the same callbacks, but every priority runs on its own bounded executor,
+// so e.g. a long cloud download cannot delay processing the next NFC scan
+public abstract class PriorityTask<Params, Result> {
+    private static final String LOG_ID = "OpenLibre::" + PriorityTask.class.getSimpleName();
+
+    public enum Priority {
+        // highest priority first
+        NFC(1, Process.THREAD_PRIORITY_DEFAULT),
+        INGEST(1, Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_MORE_FAVORABLE),
+        SYNC(1, Process.THREAD_PRIORITY_BACKGROUND),
+        PUSH(2, Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_LESS_FAVORABLE);
+
+        private final int numThreads;
+        private final int threadPriority;
+
+        Priority(int numThreads, int threadPriority) {
+            this.numThreads = numThreads;
+            this.threadPriority = threadPriority;
+        }
+    }
+
+    public enum Status {
+        PENDING,
+        RUNNING,
+        FINISHED
+    }
+
+    private static final int maxQueuedTasksPerPriority = 32;
+    private static final ThreadPoolExecutor[] executors = new ThreadPoolExecutor[Priority.values().length];
+    private static ScheduledExecutorService timeoutScheduler;
+    private static Handler mainHandler;
+
+    private final Priority priority;
+    private final long timeout; // [ms], 0 for no timeout
+    private volatile Status status = Status.PENDING;
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private final AtomicBoolean taskInvoked = new AtomicBoolean(false);
+    private volatile boolean timedOut = false;
+    private Params[] params;
+    private ScheduledFuture<?> timeoutFuture;
+
+    private final FutureTask<Result> future = new FutureTask<Result>(new Callable<Result>() {
+        @Override
+        public Result call() {
+            taskInvoked.set(true);
+            Result result = null;
+            try {
+                result = doInBackground(params);
+            } catch (RuntimeException e) {
+                cancelled.set(true);
+                throw e;
+            } finally {
+                postResult(result);
+            }
+            return result;
+        }
+    }) {
+        @Override
+        protected void done() {
+            try {
+                get();
+            } catch (InterruptedException e) {
+                Log.w(LOG_ID, e.toString());
+            } catch (ExecutionException e) {
+                throw new RuntimeException("An error occurred while executing doInBackground()", e.getCause());
+            } catch (CancellationException e) {
+                postResultIfNotInvoked();
+            }
+        }
+    };
+
+    protected PriorityTask(Priority priority) {
+        this(priority, 0);
+    }
+
+    protected PriorityTask(Priority priority, long timeout) {
+        this.priority = priority;
+        this.timeout = timeout;
+    }
+
+    protected abstract Result doInBackground(Params... params);
+
+    protected void onPreExecute() {
+    }
+
+    protected void onPostExecute(Result result) {
+    }
+
+    // called instead of onPostExecute, if the task was cancelled or timed out
+    protected void onCancelled() {
+    }
+
+    // has to be called from the GUI thread
+    @SafeVarargs
+    public final PriorityTask<Params, Result> execute(Params... params) {
+        if (status != Status.PENDING) {
+            throw new IllegalStateException("Cannot execute task: the task is already " +
+                    (status == Status.RUNNING ? "running." : "finished."));
+        }
+        status = Status.RUNNING;
+        onPreExecute();
+        this.params = params;
+
+        if (timeout > 0) {
+            timeoutFuture = getTimeoutScheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    Log.w(LOG_ID, PriorityTask.this.getClass().getSimpleName() + " timed out after " + timeout + " ms");
+                    timedOut = true;
+                    cancel(true);
+                    // report the timeout right away, even if doInBackground() ignores the interrupt
+                    postResult(null);
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+        try {
+            getExecutor(priority).execute(future);
+        } catch (RejectedExecutionException e) {
+            Log.w(LOG_ID, "Too many " + priority + " tasks queued, cancelling " + getClass().getSimpleName());
+            cancel(false);
+        }
+        return this;
+    }
+
+    // as with AsyncTask, a running task only stops early if it checks isCancelled() or is interrupted
+    public final boolean cancel(boolean mayInterruptIfRunning) {
+        cancelled.set(true);
+        boolean result = future.cancel(mayInterruptIfRunning);
+        // free the slot in the bounded queue, if the task did not start yet
+        getExecutor(priority).remove(future);
+        return result;
+    }
+
+    public final boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    public final boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public final Status getStatus() {
+        return status;
+    }
+
+    public final Priority getPriority() {
+        return priority;
+    }
+
+    private void postResultIfNotInvoked() {
+        if (!taskInvoked.get()) {
+            postResult(null);
+        }
+    }
+
+    private void postResult(final Result result) {
+        getMainHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                finish(result);
+            }
+        });
+    }
+
+    private void finish(Result result) {
+        if (status == Status.FINISHED) {
+            return;
+        }
+        if (timeoutFuture != null) {
+            timeoutFuture.cancel(false);
+        }
+        if (isCancelled()) {
+            onCancelled();
+        } else {
+            onPostExecute(result);
+        }
+        status = Status.FINISHED;
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor(final Priority priority) {
+        ThreadPoolExecutor executor = executors[priority.ordinal()];
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(priority.numThreads, priority.numThreads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(maxQueuedTasksPerPriority), new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger(1);
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(priority.threadPriority);
+                            try {
+                                runnable.run();
+                            } finally {
+                                // the thread ends after being idle, do not leave Realm instances open on it
+                                RealmProvider.releaseAll();
+                            }
+                        }
+                    }, "PriorityTask " + priority + " #" + threadCount.getAndIncrement());
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            executors[priority.ordinal()] = executor;
+        }
+        return executor;
+    }
+
+    private static synchronized ScheduledExecutorService getTimeoutScheduler() {
+        if (timeoutScheduler == null) {
+            timeoutScheduler = Executors.newSingleThreadScheduledExecutor();
+        }
+        return timeoutScheduler;
+    }
+
+    private static synchronized Handler getMainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+}
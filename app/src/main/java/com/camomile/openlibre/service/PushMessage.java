@@ -21,6 +21,7 @@ public class PushMessage {
     private float predictedGlucose;
     private double trend;
     private long date;
+    private String alarmText = null;
 
     public PushMessage(long date, float glucose, float predictedGlucose, double trend){
         this.date = date;
@@ -29,6 +30,20 @@ public class PushMessage {
         this.trend = trend;
     }
 
+    public static PushMessage alarm(long date, String alarmText) {
+        PushMessage message = new PushMessage(date, 0, 0, 0);
+        message.alarmText = alarmText;
+        return message;
+    }
+
+    public boolean isAlarm() {
+        return alarmText != null;
+    }
+
+    public String getAlarmText() {
+        return alarmText;
+    }
+
     public float getGlucose() {
         return glucose;
     }
@@ -41,6 +56,11 @@ public class PushMessage {
         return new Date(date);
     }
 
+    // raw glucose per minute
+    public double getTrendRaw() {
+        return trend;
+    }
+
     public GlucoseTrend getTrend() {
 
         float rotationDegrees = -90f * max(-1f, min(1f, (float) (trend / AlgorithmUtil.TREND_UP_DOWN_LIMIT)));
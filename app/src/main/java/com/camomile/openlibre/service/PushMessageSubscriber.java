@@ -0,0 +1,18 @@
+package com.camomile.openlibre.service;
+
+import com.camomile.openlibre.OpenLibre;
+
+// sends a push message to the linked devices for every new scan
+public class PushMessageSubscriber implements ReadingStream.Subscriber {
+
+    @Override
+    public void onReading(ReadingSnapshot readingSnapshot) {
+        if (readingSnapshot.getSource() != ReadingSnapshot.Source.SCAN || !readingSnapshot.hasTrend()) {
+            return;
+        }
+        if (OpenLibre.userProfile == null) {
+            return;
+        }
+        new SendMessageTask(readingSnapshot.toPushMessage(), OpenLibre.userProfile.getTokens(), null).execute();
+    }
+}
@@ -0,0 +1,54 @@
+package com.camomile.openlibre.service;
+
+import com.camomile.openlibre.model.ProcessedDataQuery;
+import com.camomile.openlibre.model.RawTagData;
+import com.camomile.openlibre.model.ReadingData;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+
+// hands the data of a scan to the IngestWriter on the ingest thread and waits until it is stored and published
+public class ReadingIngestTask extends PriorityTask<Void, ReadingSnapshot> {
+
+    private final String sensorTagId;
+    private final byte[] data;
+
+    public ReadingIngestTask(String sensorTagId, byte[] data) {
+        super(Priority.INGEST, TimeUnit.SECONDS.toMillis(30));
+        this.sensorTagId = sensorTagId;
+        this.data = data.clone();
+    }
+
+    @Override
+    protected ReadingSnapshot doInBackground(Void... params) {
+        return ingest(sensorTagId, data);
+    }
+
+    // blocking, may be called from any thread but the GUI thread
+    public static ReadingSnapshot ingest(String sensorTagId, byte[] data) {
+        return waitFor(IngestWriter.getInstance().submit(new RawTagData(sensorTagId, data), ReadingSnapshot.Source.SCAN));
+    }
+
+    static ReadingSnapshot waitFor(Future<ReadingSnapshot> pendingReading) {
+        try {
+            return pendingReading.get();
+        } catch (InterruptedException e) {
+            // the reading is still stored by the IngestWriter
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the reading to be stored", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Storing the reading failed", e.getCause());
+        }
+    }
+
+    // after all readings were parsed again nothing is new, so only the latest one is published for the GUI to refresh
+    public static void publishLatest(Realm realmProcessedData, ReadingSnapshot.Source source) {
+        ReadingData latestReadingData = ProcessedDataQuery.findLatestReading(realmProcessedData);
+        if (latestReadingData != null) {
+            ReadingStream.getInstance().publish(ReadingSnapshot.latest(latestReadingData, source));
+        }
+    }
+}
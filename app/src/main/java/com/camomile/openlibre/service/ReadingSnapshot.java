@@ -0,0 +1,135 @@
+package com.camomile.openlibre.service;
+
+import com.camomile.openlibre.model.GlucoseData;
+import com.camomile.openlibre.model.PredictionData;
+import com.camomile.openlibre.model.ReadingData;
+import com.camomile.openlibre.model.SensorTimeline;
+import com.camomile.openlibre.model.TimelinePoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.realm.Realm;
+
+// plain copy of the values of a new reading needed right after a scan,
+// can be passed between threads unlike the Realm backed ReadingData
+public class ReadingSnapshot {
+    public enum Source {
+        SCAN,
+        DOWNLOAD,
+        IMPORT
+    }
+
+    private final Source source;
+    private final String readingId;
+    private final long date;
+    private final boolean hasTrend;
+    private final float glucose;
+    private final float predictedGlucose;
+    private final double trend;
+    private final List<Point> points;
+
+    // one glucose value the reading added to the timeline
+    public static class Point {
+        private final long date;
+        private final float glucose;
+        private final boolean isTrendData;
+
+        private Point(TimelinePoint timelinePoint) {
+            date = timelinePoint.getDate();
+            glucose = timelinePoint.getGlucoseData().glucose();
+            isTrendData = timelinePoint.isTrendData();
+        }
+
+        public long getDate() {
+            return date;
+        }
+
+        public float getGlucose() {
+            return glucose;
+        }
+
+        public boolean isTrendData() {
+            return isTrendData;
+        }
+    }
+
+    // values replaced by a newer reading of the same batch are only part of the snapshot of that reading
+    ReadingSnapshot(Realm realmProcessedData, ReadingData readingData, Source source) {
+        this(readingData, source, getPoints(realmProcessedData, readingData));
+    }
+
+    private ReadingSnapshot(ReadingData readingData, Source source, List<Point> points) {
+        this.source = source;
+        this.points = points;
+        readingId = readingData.getId();
+        date = readingData.getDate();
+        hasTrend = readingData.getTrend().size() > 0;
+        if (hasTrend) {
+            PredictionData predictedGlucose = new PredictionData(readingData.getTrend());
+            glucose = readingData.getTrend().last().glucose();
+            this.predictedGlucose = predictedGlucose.glucoseData.glucose();
+            trend = predictedGlucose.glucoseSlopeRaw;
+        } else {
+            glucose = 0;
+            this.predictedGlucose = 0;
+            trend = 0;
+        }
+    }
+
+    // only the latest reading of many, without the points it added
+    static ReadingSnapshot latest(ReadingData readingData, Source source) {
+        return new ReadingSnapshot(readingData, source, Collections.<Point>emptyList());
+    }
+
+    private static List<Point> getPoints(Realm realmProcessedData, ReadingData readingData) {
+        List<Point> points = new ArrayList<>();
+        for (TimelinePoint timelinePoint : SensorTimeline.getPointsOfReading(realmProcessedData, readingData)) {
+            points.add(new Point(timelinePoint));
+        }
+        return points;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    public String getReadingId() {
+        return readingId;
+    }
+
+    public long getDate() {
+        return date;
+    }
+
+    public boolean hasTrend() {
+        return hasTrend;
+    }
+
+    public float getGlucose() {
+        return glucose;
+    }
+
+    public float getPredictedGlucose() {
+        return predictedGlucose;
+    }
+
+    // raw glucose per minute
+    public double getTrend() {
+        return trend;
+    }
+
+    // the values of the merged timeline this reading added, sorted by date
+    public List<Point> getPoints() {
+        return points;
+    }
+
+    public String getGlucoseString() {
+        return GlucoseData.formatValue(glucose);
+    }
+
+    public PushMessage toPushMessage() {
+        return new PushMessage(date, glucose, predictedGlucose, trend);
+    }
+}
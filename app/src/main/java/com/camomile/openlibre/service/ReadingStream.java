@@ -0,0 +1,131 @@
+package com.camomile.openlibre.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+// publishes every stored reading with the glucose values it added to all subscribers,
+// whether it came from a scan, a download or an import
+// each subscriber has its own bounded queue, a slow subscriber loses its oldest readings instead of
+// blocking the publisher or the other subscribers
+public class ReadingStream {
+    private static final String LOG_ID = "OpenLibre::" + ReadingStream.class.getSimpleName();
+
+    public interface Subscriber {
+        void onReading(ReadingSnapshot readingSnapshot);
+    }
+
+    public enum Delivery {
+        MAIN_THREAD,
+        BACKGROUND
+    }
+
+    private static ReadingStream instance;
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final Executor mainThreadExecutor;
+    private final Executor backgroundExecutor = Executors.newSingleThreadExecutor();
+
+    private ReadingStream() {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        mainThreadExecutor = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                mainHandler.post(runnable);
+            }
+        };
+    }
+
+    public static synchronized ReadingStream getInstance() {
+        if (instance == null) {
+            instance = new ReadingStream();
+        }
+        return instance;
+    }
+
+    // capacity 1 only keeps the latest reading, which is enough for anything that just shows the current value
+    public Subscription subscribe(Subscriber subscriber, Delivery delivery, int capacity) {
+        Subscription subscription = new Subscription(subscriber,
+                delivery == Delivery.MAIN_THREAD ? mainThreadExecutor : backgroundExecutor, capacity);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public void unsubscribe(Subscription subscription) {
+        if (subscription != null) {
+            subscriptions.remove(subscription);
+            subscription.clear();
+        }
+    }
+
+    // may be called from any thread
+    public void publish(ReadingSnapshot readingSnapshot) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(readingSnapshot);
+        }
+    }
+
+    public static class Subscription {
+        private final Subscriber subscriber;
+        private final Executor executor;
+        private final int capacity;
+        private final ArrayDeque<ReadingSnapshot> queue;
+        private boolean drainScheduled = false;
+        private int numDropped = 0;
+        private volatile boolean active = true;
+
+        private Subscription(Subscriber subscriber, Executor executor, int capacity) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+            this.capacity = Math.max(1, capacity);
+            queue = new ArrayDeque<>(this.capacity);
+        }
+
+        private synchronized void offer(ReadingSnapshot readingSnapshot) {
+            if (queue.size() >= capacity) {
+                queue.pollFirst();
+                numDropped++;
+            }
+            queue.addLast(readingSnapshot);
+            if (!drainScheduled) {
+                drainScheduled = true;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        drain();
+                    }
+                });
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                ReadingSnapshot readingSnapshot;
+                synchronized (this) {
+                    readingSnapshot = queue.pollFirst();
+                    if (readingSnapshot == null) {
+                        drainScheduled = false;
+                        if (numDropped > 0) {
+                            Log.d(LOG_ID, subscriber.getClass().getSimpleName() + " skipped " + numDropped + " readings");
+                            numDropped = 0;
+                        }
+                        return;
+                    }
+                }
+                if (active) {
+                    subscriber.onReading(readingSnapshot);
+                }
+            }
+        }
+
+        private synchronized void clear() {
+            active = false;
+            queue.clear();
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class SendMessageTask extends CloudStoreTask {
     private static final String LOG_ID = "OpenLibre::" + SendMessageTask.class.getSimpleName();
@@ -29,11 +30,16 @@ public class SendMessageTask extends CloudStoreTask {
     public static final String FCM_URL = "https://fcm.googleapis.com/fcm/send";
     public static final String SERVER_KEY = "AAAAvMeXCms:APA91bHDiC3_GCcHPVREk7MAT8S5ByE-j0zG4P6peLliMKknfuVAWy4eM3BqfuLRC6V3cw9vcpMqniWsWt86f0IGYEvJjhHwlTvQYLJLWz4s8duX3cXDdC62hveu9RmRYnCSV8D0oaGM";
 
+    static final String DATA_DATE = "date";
+    static final String DATA_GLUCOSE_MGDL = "glucose_mgdl";
+    static final String DATA_PREDICTED_GLUCOSE_MGDL = "predicted_glucose_mgdl";
+    static final String DATA_TREND_MGDL = "trend_mgdl";
+
     private PushMessage mData;
     private List<String> mTokens;
 
     public SendMessageTask(PushMessage message, List<String> tokens, ITaskContainer container){
-        super(container);
+        super(container, Priority.PUSH, TimeUnit.SECONDS.toMillis(30));
         mTokens = tokens;
         mData = message;
     }
@@ -44,6 +50,21 @@ public class SendMessageTask extends CloudStoreTask {
 
         SimpleDateFormat dateFormat = new SimpleDateFormat("dd MMM HH:mm");
         String title = dateFormat.format(message.getDate());
+
+        if (message.isAlarm()) {
+            try {
+                notification.put("to", token);
+                notificationBody.put("title", title);
+                notificationBody.put("body", message.getAlarmText());
+                notification.put("notification", notificationBody);
+                notification.put("priority", "high");
+                return notification;
+            } catch (JSONException e) {
+                Log.d(LOG_ID, e.getMessage());
+                return null;
+            }
+        }
+
         String bodyPattern = "Glucose %1$.1f \nPrediction %2$.1f";
 
         String trend;
@@ -66,6 +87,13 @@ public class SendMessageTask extends CloudStoreTask {
             notificationBody.put("body", body);
             notification.put("notification", notificationBody);
             notification.put("priority", "high");
+            // the values in mg/dl for the alarms of the followers, which may use another unit
+            JSONObject data = new JSONObject();
+            data.put(DATA_DATE, message.getDate().getTime());
+            data.put(DATA_GLUCOSE_MGDL, toMGDL(message.getGlucose()));
+            data.put(DATA_PREDICTED_GLUCOSE_MGDL, toMGDL(message.getPredictedGlucose()));
+            data.put(DATA_TREND_MGDL, message.getTrendRaw() / 10);
+            notification.put("data", data);
             return notification;
         }
         catch (JSONException e){
@@ -76,6 +104,10 @@ public class SendMessageTask extends CloudStoreTask {
         return null;
     }
 
+    private static double toMGDL(float glucose) {
+        return OpenLibre.GLUCOSE_UNIT_IS_MMOL ? GlucoseData.convertGlucoseMMOLToMGDL(glucose) : glucose;
+    }
+
     @Override
     public boolean doWork() {
 
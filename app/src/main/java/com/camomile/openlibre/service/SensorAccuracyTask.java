@@ -0,0 +1,143 @@
+package com.camomile.openlibre.service;
+
+import android.util.Log;
+
+import com.camomile.openlibre.RealmProvider;
+import com.camomile.openlibre.model.SensorAccuracy;
+import com.camomile.openlibre.model.SensorData;
+import com.camomile.openlibre.model.SensorMerge;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+
+import static com.camomile.openlibre.OpenLibre.SENSOR_OVERLAP_PREFERENCE;
+import static com.camomile.openlibre.OpenLibre.realmConfigProcessedData;
+import static com.camomile.openlibre.OpenLibre.realmConfigUserData;
+
+// computes the SensorAccuracy of all sensors whose history or finger-sticks changed, one sensor per thread,
+// and caches the results in the processed Realm through the IngestWriter, so the sensor status can show them without waiting
+public class SensorAccuracyTask extends PriorityTask<Void, Boolean> {
+    private static final String LOG_ID = "OpenLibre::" + SensorAccuracyTask.class.getSimpleName();
+
+    public interface Listener {
+        void onSensorAccuracyUpdated();
+    }
+
+    private final Listener listener;
+
+    public SensorAccuracyTask(Listener listener) {
+        super(Priority.SYNC, TimeUnit.MINUTES.toMillis(1));
+        this.listener = listener;
+    }
+
+    @Override
+    protected Boolean doInBackground(Void... params) {
+        Realm realmProcessedData = RealmProvider.acquire(realmConfigProcessedData);
+        Realm realmUserData = RealmProvider.acquire(realmConfigUserData);
+        try {
+            List<String> outdatedSensorIds = new ArrayList<>();
+            for (SensorData sensor : realmProcessedData.where(SensorData.class).findAll()) {
+                if (!SensorAccuracy.isUpToDate(realmProcessedData, realmUserData, sensor.getId())) {
+                    outdatedSensorIds.add(sensor.getId());
+                }
+            }
+            if (outdatedSensorIds.isEmpty()) {
+                return false;
+            }
+
+            final List<SensorAccuracy> results = computeInParallel(outdatedSensorIds);
+
+            // stored by the writer of the processed data, the listener is called once the results are committed
+            Future<Void> store = IngestWriter.getInstance().submitTask(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    Realm realm = RealmProvider.acquire(realmConfigProcessedData);
+                    realm.beginTransaction();
+                    try {
+                        realm.copyToRealmOrUpdate(results);
+                        if (SENSOR_OVERLAP_PREFERENCE == SensorMerge.Preference.QUALITY) {
+                            // the preferred sensors of overlap windows depend on the accuracy
+                            SensorMerge.updateAll(realm);
+                        }
+                        realm.commitTransaction();
+                    } finally {
+                        if (realm.isInTransaction()) {
+                            realm.cancelTransaction();
+                        }
+                        RealmProvider.release(realmConfigProcessedData);
+                    }
+                    return null;
+                }
+            });
+            try {
+                store.get();
+            } catch (ExecutionException e) {
+                // logged by the IngestWriter
+                return false;
+            } catch (InterruptedException e) {
+                // the results are still stored by the writer
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            Log.d(LOG_ID, "Updated accuracy of " + results.size() + " sensors");
+            return !results.isEmpty();
+        } finally {
+            RealmProvider.release(realmConfigUserData);
+            RealmProvider.release(realmConfigProcessedData);
+        }
+    }
+
+    private static List<SensorAccuracy> computeInParallel(List<String> sensorIds) {
+        int numThreads = Math.min(sensorIds.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<SensorAccuracy>> futures = new ArrayList<>(sensorIds.size());
+        for (final String sensorId : sensorIds) {
+            futures.add(executor.submit(new Callable<SensorAccuracy>() {
+                @Override
+                public SensorAccuracy call() {
+                    // every worker thread reads from its own Realm instances
+                    Realm realmProcessedData = RealmProvider.acquire(realmConfigProcessedData);
+                    Realm realmUserData = RealmProvider.acquire(realmConfigUserData);
+                    try {
+                        return SensorAccuracy.compute(realmProcessedData, realmUserData, sensorId);
+                    } finally {
+                        RealmProvider.release(realmConfigUserData);
+                        RealmProvider.release(realmConfigProcessedData);
+                    }
+                }
+            }));
+        }
+        executor.shutdown();
+
+        List<SensorAccuracy> results = new ArrayList<>(sensorIds.size());
+        try {
+            for (Future<SensorAccuracy> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    Log.e(LOG_ID, "Computing sensor accuracy failed: " + e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            // timed out, the results so far are still stored
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        return results;
+    }
+
+    @Override
+    protected void onPostExecute(Boolean updated) {
+        if (listener != null && updated) {
+            listener.onSensorAccuracyUpdated();
+        }
+    }
+}
@@ -13,10 +13,12 @@ import android.view.ViewGroup;
 import android.widget.EditText;
 
 import com.camomile.openlibre.model.BloodGlucoseData;
+import com.camomile.openlibre.service.SensorAccuracyTask;
 
 import java.util.Date;
 
 import com.camomile.openlibre.R;
+import com.camomile.openlibre.RealmProvider;
 import io.realm.Realm;
 
 import static com.camomile.openlibre.OpenLibre.realmConfigUserData;
@@ -34,11 +36,14 @@ public class BloodGlucoseInputFragment extends DialogFragment {
     }
 
     public void saveBloodGlucoseLevel(long date, float bloodGlucoseLevel) {
-        Realm realmUserData = Realm.getInstance(realmConfigUserData);
+        Realm realmUserData = RealmProvider.acquire(realmConfigUserData);
         realmUserData.beginTransaction();
         realmUserData.copyToRealmOrUpdate(new BloodGlucoseData(date, bloodGlucoseLevel));
         realmUserData.commitTransaction();
-        realmUserData.close();
+        RealmProvider.release(realmConfigUserData);
+
+        // keep the cached sensor accuracy up to date for the sensor status
+        new SensorAccuracyTask(null).execute();
     }
 
     @Override
@@ -20,6 +20,8 @@ import com.camomile.openlibre.model.AlgorithmUtil;
 import com.camomile.openlibre.model.GlucoseData;
 import com.camomile.openlibre.model.PredictionData;
 import com.camomile.openlibre.model.ReadingData;
+import com.camomile.openlibre.model.SensorCalibration;
+import com.camomile.openlibre.model.TimelinePoint;
 import com.github.mikephil.charting.charts.LineChart;
 import com.github.mikephil.charting.components.AxisBase;
 import com.github.mikephil.charting.components.Legend;
@@ -48,6 +50,7 @@ import com.camomile.openlibre.R;
 import static com.camomile.openlibre.OpenLibre.GLUCOSE_TARGET_MAX;
 import static com.camomile.openlibre.OpenLibre.GLUCOSE_TARGET_MIN;
 import static com.camomile.openlibre.OpenLibre.GLUCOSE_UNIT_IS_MMOL;
+import static com.camomile.openlibre.OpenLibre.SHOW_SMOOTHED_TREND;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 
@@ -260,13 +263,60 @@ public class DataPlotFragment extends Fragment
         ((TextView) mDataPlotView.findViewById(R.id.tv_plot_date)).setText("");
     }
 
-    void showHistory(List<GlucoseData> history) {
+    void showHistory(List<TimelinePoint> timeline, List<SensorCalibration> calibrations) {
         updateTargetArea();
         mPlot.clear();
         mDataPlotView.findViewById(R.id.scan_progress).setVisibility(View.INVISIBLE);
         mDataPlotView.findViewById(R.id.scan_view).setVisibility(View.VISIBLE);
 
-        updatePlot(history, null);
+        if (timeline.size() == 0) {
+            Toast.makeText(this.getContext(), "No historical data available!", Toast.LENGTH_LONG).show();
+            return;
+        }
+
+        mPlotColorIndex = 0;
+        if (mFirstDate < 0) {
+            mFirstDate = timeline.get(0).getDate();
+            mDateTimeMarkerView.setFirstDate(mFirstDate);
+        }
+
+        // calibrated values first, so the last line is still the latest trend for zooming
+        LineData lineData = new LineData();
+        for (SensorCalibration calibration : calibrations) {
+            addCalibratedLineData(lineData, calibration);
+        }
+
+        // one line per sensor and gap free part, the trend values after the last history value get their own line
+        List<GlucoseData> segment = new ArrayList<>();
+        TimelinePoint previousPoint = null;
+        for (TimelinePoint point : timeline) {
+            if (previousPoint != null && (point.isAfterGap() || point.isTrendData() != previousPoint.isTrendData()
+                    || !point.getSensorId().equals(previousPoint.getSensorId()))) {
+                lineData.addDataSet(makeLineData(segment));
+                segment = new ArrayList<>();
+            }
+            segment.add(point.getGlucoseData());
+            previousPoint = point;
+        }
+        lineData.addDataSet(makeLineData(segment));
+        mPlot.setData(lineData);
+
+        updatePlotTitle(false);
+        updateChartViewConstrains();
+        ((TextView) mDataPlotView.findViewById(R.id.tv_plot_date)).setText("");
+    }
+
+    private void addCalibratedLineData(LineData lineData, SensorCalibration calibration) {
+        long maxGap = TimeUnit.MINUTES.toMillis(TimelinePoint.maxMinutesWithoutGap);
+        LineDataSet lineDataSet = null;
+        for (int i = 0; i < calibration.size(); i++) {
+            if (lineDataSet == null || calibration.getDate(i) - calibration.getDate(i - 1) > maxGap) {
+                lineDataSet = makeCalibratedLineData();
+                lineData.addDataSet(lineDataSet);
+            }
+            lineDataSet.addEntryOrdered(new Entry(convertDateToXAxisValue(calibration.getDate(i)),
+                    GlucoseData.convertGlucoseMGDLToDisplayUnit(calibration.getCalibratedGlucose(i))));
+        }
     }
 
     void showScan(ReadingData readData) {
@@ -449,7 +499,7 @@ public class DataPlotFragment extends Fragment
         LineDataSet lineDataSet = new LineDataSet(new ArrayList<Entry>(), title);
         for (GlucoseData gd : glucoseDataList) {
             float x = convertDateToXAxisValue(gd.getDate());
-            float y = gd.glucose();
+            float y = SHOW_SMOOTHED_TREND ? gd.glucoseSmoothed() : gd.glucose();
             lineDataSet.addEntryOrdered(new Entry(x, y));
             /*
             Log.d(LOG_ID, String.format("%s: %s -> %s: %f -> %f",
@@ -494,6 +544,22 @@ public class DataPlotFragment extends Fragment
         return lineDataSet;
     }
 
+    private LineDataSet makeCalibratedLineData() {
+        LineDataSet lineDataSet = new LineDataSet(new ArrayList<Entry>(), "Calibrated");
+        lineDataSet.setAxisDependency(YAxis.AxisDependency.LEFT);
+        lineDataSet.setDrawCircles(false);
+        lineDataSet.setDrawValues(false);
+        lineDataSet.setDrawHighlightIndicators(false);
+        lineDataSet.setHighlightEnabled(false);
+
+        lineDataSet.setColor(Color.argb(180, 80, 80, 80));
+        lineDataSet.setLineWidth(1.5f);
+        lineDataSet.enableDashedLine(10f, 5f, 0f);
+        lineDataSet.setMode(LineDataSet.Mode.LINEAR);
+
+        return lineDataSet;
+    }
+
     private float convertDateToXAxisValue(long date) {
         return (date - mFirstDate) / TimeUnit.MINUTES.toMillis(1L);
     }
@@ -0,0 +1,157 @@
+package com.camomile.openlibre.ui;
+
+
+import android.app.Dialog;
+import android.content.DialogInterface;
+import android.graphics.Color;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.v4.app.DialogFragment;
+import android.support.v7.app.AlertDialog;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.Spinner;
+
+import com.camomile.openlibre.R;
+import com.camomile.openlibre.RealmProvider;
+import com.camomile.openlibre.model.AmbulatoryGlucoseProfile;
+import com.camomile.openlibre.model.GlucoseData;
+import com.camomile.openlibre.model.GlucoseStatistics;
+import com.github.mikephil.charting.charts.LineChart;
+import com.github.mikephil.charting.components.AxisBase;
+import com.github.mikephil.charting.components.XAxis;
+import com.github.mikephil.charting.components.YAxis;
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.data.LineDataSet;
+import com.github.mikephil.charting.formatter.IAxisValueFormatter;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+import io.realm.Realm;
+
+import static com.camomile.openlibre.OpenLibre.realmConfigProcessedData;
+
+public class GlucoseProfileFragment extends DialogFragment {
+    private static final int[] periodsInDays = {14, 30, 90};
+    // 5th and 95th, 25th and 75th percentile, median
+    private static final int[] percentileColors = {
+            Color.argb(120, 150, 180, 220), Color.argb(255, 70, 120, 190),
+            Color.argb(255, 20, 40, 110),
+            Color.argb(255, 70, 120, 190), Color.argb(120, 150, 180, 220)
+    };
+
+    private LineChart mPlot;
+
+    public GlucoseProfileFragment() {
+        // Required empty public constructor
+    }
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState)
+    {
+        View view = getActivity().getLayoutInflater().inflate(R.layout.fragment_glucose_profile, null);
+        mPlot = (LineChart) view.findViewById(R.id.cv_glucose_profile);
+        setupPlot();
+
+        Spinner periodSpinner = (Spinner) view.findViewById(R.id.sp_glucose_profile_period);
+        periodSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                updatePlot(periodsInDays[position]);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) { }
+        });
+
+        AlertDialog.Builder alertDialogBuilder = new AlertDialog.Builder(getActivity());
+        alertDialogBuilder.setView(view);
+        alertDialogBuilder.setTitle(getResources().getString(R.string.title_glucose_profile));
+        alertDialogBuilder.setPositiveButton(R.string.ok, new DialogInterface.OnClickListener()
+        {
+            @Override
+            public void onClick(DialogInterface dialog, int which)
+            {
+                dialog.dismiss();
+            }
+        });
+
+        return alertDialogBuilder.create();
+    }
+
+    private void setupPlot() {
+        mPlot.getDescription().setEnabled(false);
+        mPlot.getLegend().setEnabled(false);
+        mPlot.setTouchEnabled(false);
+        mPlot.setDrawGridBackground(false);
+        mPlot.setNoDataText(getResources().getString(R.string.glucose_profile_no_data));
+
+        XAxis xAxis = mPlot.getXAxis();
+        xAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
+        xAxis.setTextSize(12f);
+        xAxis.setTextColor(Color.BLACK);
+        xAxis.setDrawAxisLine(false);
+        xAxis.setAxisMinimum(0f);
+        xAxis.setAxisMaximum(24f);
+        xAxis.setGranularity(3f);
+        xAxis.setLabelCount(9, true);
+        xAxis.setValueFormatter(new IAxisValueFormatter() {
+            @Override
+            public String getFormattedValue(float value, AxisBase axis) {
+                return String.format(Locale.getDefault(), "%02d:00", (int) value % 24);
+            }
+        });
+
+        YAxis leftAxis = mPlot.getAxisLeft();
+        leftAxis.setTextSize(12f);
+        leftAxis.setTextColor(Color.BLACK);
+        leftAxis.setDrawAxisLine(false);
+        leftAxis.setAxisMinimum(0f);
+        leftAxis.setAxisMaximum(GlucoseData.convertGlucoseMGDLToDisplayUnit(400f));
+        mPlot.getAxisRight().setEnabled(false);
+    }
+
+    private void updatePlot(int days) {
+        int today = GlucoseStatistics.getToday();
+        float[][] percentiles;
+        Realm realmProcessedData = RealmProvider.acquire(realmConfigProcessedData);
+        try {
+            percentiles = AmbulatoryGlucoseProfile.getPercentiles(realmProcessedData, today - days + 1, today);
+        } finally {
+            RealmProvider.release(realmConfigProcessedData);
+        }
+
+        LineData lineData = new LineData();
+        for (int i = 0; i < percentiles.length; i++) {
+            lineData.addDataSet(makeLineData(percentiles[i], percentileColors[i], i == percentiles.length / 2));
+        }
+        if (lineData.getEntryCount() == 0) {
+            mPlot.clear();
+        } else {
+            mPlot.setData(lineData);
+        }
+        mPlot.invalidate();
+    }
+
+    private static LineDataSet makeLineData(float[] percentile, int color, boolean isMedian) {
+        ArrayList<Entry> entries = new ArrayList<>();
+        for (int bucket = 0; bucket < percentile.length; bucket++) {
+            if (!Float.isNaN(percentile[bucket])) {
+                // x in hours at the center of the bucket
+                float x = (bucket + 0.5f) * AmbulatoryGlucoseProfile.bucketInMinutes / 60f;
+                entries.add(new Entry(x, GlucoseData.convertGlucoseMGDLToDisplayUnit(percentile[bucket])));
+            }
+        }
+        LineDataSet lineDataSet = new LineDataSet(entries, "");
+        lineDataSet.setAxisDependency(YAxis.AxisDependency.LEFT);
+        lineDataSet.setColor(color);
+        lineDataSet.setLineWidth(isMedian ? 2.5f : 1.5f);
+        lineDataSet.setDrawCircles(false);
+        lineDataSet.setDrawValues(false);
+        lineDataSet.setMode(LineDataSet.Mode.CUBIC_BEZIER);
+        return lineDataSet;
+    }
+}
@@ -10,21 +10,29 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import com.camomile.openlibre.model.GlucoseStatistics;
 import com.camomile.openlibre.model.ReadingData;
 
 import com.camomile.openlibre.R;
+import com.camomile.openlibre.RealmProvider;
 import com.camomile.openlibre.service.CloudStoreSynchronization;
+import com.camomile.openlibre.service.IngestWriter;
+import com.camomile.openlibre.service.ReadingSnapshot;
+import com.camomile.openlibre.service.ReadingStream;
 
 import java.util.Date;
+import java.util.concurrent.Callable;
 
 import io.realm.Realm;
 import io.realm.Sort;
 
 import static com.camomile.openlibre.OpenLibre.realmConfigProcessedData;
 
-public class LogFragment extends Fragment implements SwipeRefreshLayout.OnRefreshListener {
+public class LogFragment extends Fragment implements SwipeRefreshLayout.OnRefreshListener, ReadingStream.Subscriber {
     OnScanDataListener mCallback;
     private SwipeRefreshLayout mSwipeRefreshLayout;
+    private RecyclerView mRecyclerView;
+    private ReadingStream.Subscription mReadingSubscription;
 
     // Container Activity must implement this interface
     public interface OnScanDataListener {
@@ -55,13 +63,33 @@ public class LogFragment extends Fragment implements SwipeRefreshLayout.OnRefres
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mRealmProcessedData = Realm.getInstance(realmConfigProcessedData);
+        mRealmProcessedData = RealmProvider.acquire(realmConfigProcessedData);
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        mRealmProcessedData.close();
+        RealmProvider.release(realmConfigProcessedData);
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        mReadingSubscription = ReadingStream.getInstance().subscribe(this, ReadingStream.Delivery.MAIN_THREAD, 1);
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        ReadingStream.getInstance().unsubscribe(mReadingSubscription);
+    }
+
+    @Override
+    public void onReading(ReadingSnapshot readingSnapshot) {
+        // the list itself is updated by Realm, just show the newest entry
+        if (mRecyclerView != null) {
+            mRecyclerView.scrollToPosition(0);
+        }
     }
 
     @Override
@@ -75,6 +103,7 @@ public class LogFragment extends Fragment implements SwipeRefreshLayout.OnRefres
         // Set the adapter
         Context context = view.getContext();
         RecyclerView recyclerView = view.findViewById(R.id.log_list_recycle_view);
+        mRecyclerView = recyclerView;
         recyclerView.setLayoutManager(new LinearLayoutManager(context));
         recyclerView.setAdapter(new LogRecyclerViewAdapter(this,
                 mRealmProcessedData
@@ -112,11 +141,29 @@ public class LogFragment extends Fragment implements SwipeRefreshLayout.OnRefres
     }
 
     public void deleteScanData(final ReadingData readingData) {
-        mRealmProcessedData.beginTransaction();
-        readingData.getHistory().deleteAllFromRealm();
-        readingData.getTrend().deleteAllFromRealm();
-        readingData.deleteFromRealm();
-        mRealmProcessedData.commitTransaction();
+        // the managed reading belongs to this thread, the writer looks it up again by its id
+        final String readingId = readingData.getId();
+        IngestWriter.getInstance().submitTask(new Callable<Void>() {
+            @Override
+            public Void call() {
+                Realm realmProcessedData = RealmProvider.acquire(realmConfigProcessedData);
+                try {
+                    ReadingData storedReadingData = realmProcessedData.where(ReadingData.class)
+                            .equalTo(ReadingData.ID, readingId).findFirst();
+                    if (storedReadingData != null) {
+                        realmProcessedData.beginTransaction();
+                        GlucoseStatistics.deleteReading(realmProcessedData, storedReadingData);
+                        realmProcessedData.commitTransaction();
+                    }
+                } finally {
+                    if (realmProcessedData.isInTransaction()) {
+                        realmProcessedData.cancelTransaction();
+                    }
+                    RealmProvider.release(realmConfigProcessedData);
+                }
+                return null;
+            }
+        });
     }
 
 }
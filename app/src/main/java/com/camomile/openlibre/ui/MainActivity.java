@@ -12,7 +12,6 @@ import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.design.widget.TabLayout;
 import android.support.v4.app.DialogFragment;
-import android.support.v4.app.Fragment;
 import android.support.v4.view.ViewPager;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
@@ -23,15 +22,18 @@ import android.widget.Toast;
 
 import com.camomile.openlibre.BuildConfig;
 import com.camomile.openlibre.OpenLibre;
-import com.camomile.openlibre.model.GlucoseData;
-import com.camomile.openlibre.model.PredictionData;
+import com.camomile.openlibre.model.ProcessedDataQuery;
 import com.camomile.openlibre.model.RawTagData;
 import com.camomile.openlibre.model.ReadingData;
-import com.camomile.openlibre.model.SensorData;
-import com.camomile.openlibre.service.CloudStoreSynchronization;
+import com.camomile.openlibre.model.SensorCalibration;
+import com.camomile.openlibre.model.SensorMerge;
+import com.camomile.openlibre.model.TimelinePoint;
+import com.camomile.openlibre.service.ContinuousReadingService;
+import com.camomile.openlibre.service.IngestWriter;
 import com.camomile.openlibre.service.NfcVReaderTask;
-import com.camomile.openlibre.service.PushMessage;
-import com.camomile.openlibre.service.SendMessageTask;
+import com.camomile.openlibre.service.ReadingIngestTask;
+import com.camomile.openlibre.service.ReadingSnapshot;
+import com.camomile.openlibre.service.ReadingStream;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.gson.Gson;
@@ -43,22 +45,22 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Callable;
 
 import io.realm.Realm;
 import io.realm.RealmResults;
 import io.realm.Sort;
 
 import com.camomile.openlibre.R;
+import com.camomile.openlibre.RealmProvider;
 
 import static com.camomile.openlibre.OpenLibre.openLibreDataPath;
 import static com.camomile.openlibre.OpenLibre.realmConfigProcessedData;
 import static com.camomile.openlibre.OpenLibre.realmConfigRawData;
+import static com.camomile.openlibre.OpenLibre.realmConfigUserData;
 
 
-public class MainActivity extends AppCompatActivity implements LogFragment.OnScanDataListener {
+public class MainActivity extends AppCompatActivity implements LogFragment.OnScanDataListener, ReadingStream.Subscriber {
 
     private static final String LOG_ID = "OpenLibre::" + MainActivity.class.getSimpleName();
     private static final String DEBUG_SENSOR_TAG_ID = "e007a00000111111";
@@ -75,7 +77,8 @@ public class MainActivity extends AppCompatActivity implements LogFragment.OnSca
 
     private boolean mContinuousSensorReadingFlag = false;
     private Tag mLastNfcTag;
-    private MainActivity mainActivity;
+
+    private ReadingStream.Subscription mReadingSubscription;
 
     private FirebaseAuth mAuth;
 
@@ -84,8 +87,8 @@ public class MainActivity extends AppCompatActivity implements LogFragment.OnSca
         setTheme(R.style.AppTheme);
         super.onCreate(savedInstanceState);
 
-        mRealmRawData = Realm.getInstance(realmConfigRawData);
-        mRealmProcessedData = Realm.getInstance(realmConfigProcessedData);
+        mRealmRawData = RealmProvider.acquire(realmConfigRawData);
+        mRealmProcessedData = RealmProvider.acquire(realmConfigProcessedData);
         setContentView(R.layout.activity_main);
 
         Toolbar toolbar = findViewById(R.id.toolbar);
@@ -112,6 +115,8 @@ public class MainActivity extends AppCompatActivity implements LogFragment.OnSca
             Toast.makeText(this, getResources().getString(R.string.error_nfc_device_not_supported), Toast.LENGTH_LONG).show();
         }
 
+        mContinuousSensorReadingFlag = ContinuousReadingService.isRunning();
+
         //Firebase auth
         mAuth = FirebaseAuth.getInstance();
     }
@@ -130,6 +135,9 @@ public class MainActivity extends AppCompatActivity implements LogFragment.OnSca
     @Override
     protected void onResume() {
         super.onResume();
+        // only the latest scan is of interest for the plot
+        mReadingSubscription = ReadingStream.getInstance().subscribe(this, ReadingStream.Delivery.MAIN_THREAD, 1);
+
         if (mNfcAdapter == null) {
             mNfcAdapter = ((NfcManager) this.getSystemService(Context.NFC_SERVICE)).getDefaultAdapter();
         }
@@ -163,6 +171,7 @@ public class MainActivity extends AppCompatActivity implements LogFragment.OnSca
     @Override
     protected void onPause() {
         super.onPause();
+        ReadingStream.getInstance().unsubscribe(mReadingSubscription);
         if (mNfcAdapter != null) {
             try {
                 // Disable foreground dispatch:
@@ -176,8 +185,8 @@ public class MainActivity extends AppCompatActivity implements LogFragment.OnSca
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        mRealmProcessedData.close();
-        mRealmRawData.close();
+        RealmProvider.release(realmConfigProcessedData);
+        RealmProvider.release(realmConfigRawData);
     }
 
     @Override
@@ -222,14 +231,13 @@ public class MainActivity extends AppCompatActivity implements LogFragment.OnSca
             return true;
 
         } else if (id == R.id.action_show_full_history) {
-            List<GlucoseData> history = mRealmProcessedData.where(GlucoseData.class)
-                    .equalTo(GlucoseData.IS_TREND_DATA, false)
-                    .sort(GlucoseData.DATE, Sort.ASCENDING)
-                    .findAll();
             ((DataPlotFragment) mSectionsPagerAdapter.getRegisteredFragment(R.integer.viewpager_page_show_scan))
                     .clearScanData();
+            Realm realmUserData = RealmProvider.acquire(realmConfigUserData);
+            List<SensorCalibration> calibrations = SensorCalibration.calibrateAll(mRealmProcessedData, realmUserData);
+            RealmProvider.release(realmConfigUserData);
             ((DataPlotFragment) mSectionsPagerAdapter.getRegisteredFragment(R.integer.viewpager_page_show_scan))
-                    .showHistory(history);
+                    .showHistory(SensorMerge.getMergedTimeline(mRealmProcessedData), calibrations);
             mViewPager.setCurrentItem(getResources().getInteger(R.integer.viewpager_page_show_scan));
             return true;
 
@@ -247,15 +255,30 @@ public class MainActivity extends AppCompatActivity implements LogFragment.OnSca
             new SensorStatusFragment().show(getSupportFragmentManager(), "sensorstatus");
             return true;
 
+        } else if (id == R.id.action_show_statistics) {
+            new StatisticsFragment().show(getSupportFragmentManager(), "statistics");
+            return true;
+
+        } else if (id == R.id.action_show_glucose_profile) {
+            new GlucoseProfileFragment().show(getSupportFragmentManager(), "glucoseprofile");
+            return true;
+
         } else if (id == R.id.action_about) {
             new AboutFragment().show(getSupportFragmentManager(), "about");
             return true;
 
+        } else if (id == R.id.action_debug_nfc_metrics) {
+            new NfcMetricsFragment().show(getSupportFragmentManager(), "nfcmetrics");
+            return true;
+
         } else if (id == R.id.action_debug_make_crash) {
             throw new RuntimeException("DEBUG: test crash");
 
         } else if (id == R.id.action_debug_cont_nfc_reading) {
             mContinuousSensorReadingFlag = !mContinuousSensorReadingFlag;
+            if (!mContinuousSensorReadingFlag) {
+                ContinuousReadingService.stop(this);
+            }
             return true;
 
         } else if (id == R.id.action_debug_clear_plot) {
@@ -280,13 +303,13 @@ public class MainActivity extends AppCompatActivity implements LogFragment.OnSca
 
         } else if (id == R.id.action_debug_value2) {
             byte[] data = {(byte) 0x63, (byte) 0x3b, (byte) 0x20, (byte) 0x12, (byte) 0x03, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x57, (byte) 0x00, (byte) 0x07, (byte) 0x06, (byte) 0xd6, (byte) 0x06, (byte) 0xc8, (byte) 0x50, (byte) 0x5a, (byte) 0x80, (byte) 0xd6, (byte) 0x06, (byte) 0xc8, (byte) 0x20, (byte) 0x5a, (byte) 0x80, (byte) 0xe4, (byte) 0x06, (byte) 0xc8, (byte) 0x18, (byte) 0x5a, (byte) 0x80, (byte) 0xe3, (byte) 0x06, (byte) 0xc8, (byte) 0x2c, (byte) 0x5a, (byte) 0x80, (byte) 0xea, (byte) 0x06, (byte) 0xc8, (byte) 0x34, (byte) 0x5a, (byte) 0x80, (byte) 0xea, (byte) 0x06, (byte) 0xc8, (byte) 0x40, (byte) 0x5a, (byte) 0x80, (byte) 0xf8, (byte) 0x06, (byte) 0x88, (byte) 0x2e, (byte) 0x1a, (byte) 0x82, (byte) 0x0d, (byte) 0x07, (byte) 0xc8, (byte) 0xdc, (byte) 0x59, (byte) 0x80, (byte) 0x0c, (byte) 0x07, (byte) 0xc8, (byte) 0x30, (byte) 0x5a, (byte) 0x80, (byte) 0x07, (byte) 0x07, (byte) 0xc8, (byte) 0x58, (byte) 0x5a, (byte) 0x80, (byte) 0x06, (byte) 0x07, (byte) 0xc8, (byte) 0x50, (byte) 0x5a, (byte) 0x80, (byte) 0x01, (byte) 0x07, (byte) 0xc8, (byte) 0x5c, (byte) 0x5a, (byte) 0x80, (byte) 0xec, (byte) 0x06, (byte) 0xc8, (byte) 0x68, (byte) 0x5a, (byte) 0x80, (byte) 0xde, (byte) 0x06, (byte) 0xc8, (byte) 0x74, (byte) 0x5a, (byte) 0x80, (byte) 0xd6, (byte) 0x06, (byte) 0xc8, (byte) 0x7c, (byte) 0x5a, (byte) 0x80, (byte) 0xd3, (byte) 0x06, (byte) 0xc8, (byte) 0x48, (byte) 0x5a, (byte) 0x80, (byte) 0x62, (byte) 0x05, (byte) 0xc8, (byte) 0xb4, (byte) 0x59, (byte) 0x80, (byte) 0x73, (byte) 0x05, (byte) 0xc8, (byte) 0x78, (byte) 0x59, (byte) 0x80, (byte) 0xdb, (byte) 0x05, (byte) 0xc8, (byte) 0x1c, (byte) 0x59, (byte) 0x80, (byte) 0x36, (byte) 0x06, (byte) 0xc8, (byte) 0x68, (byte) 0x59, (byte) 0x80, (byte) 0xb9, (byte) 0x06, (byte) 0xc8, (byte) 0x98, (byte) 0x59, (byte) 0x80, (byte) 0x07, (byte) 0x07, (byte) 0xc8, (byte) 0x58, (byte) 0x5a, (byte) 0x80, (byte) 0x28, (byte) 0x06, (byte) 0xc8, (byte) 0xa8, (byte) 0x5b, (byte) 0x80, (byte) 0xe8, (byte) 0x05, (byte) 0xc8, (byte) 0xb0, (byte) 0x9b, (byte) 0x80, (byte) 0x78, (byte) 0x05, (byte) 0xc8, (byte) 0x90, (byte) 0x5b, (byte) 0x80, (byte) 0xd4, (byte) 0x04, (byte) 0xc8, (byte) 0xe4, (byte) 0x9b, (byte) 0x80, (byte) 0xb8, (byte) 0x04, (byte) 0xc8, (byte) 0x30, (byte) 0x9c, (byte) 0x80, (byte) 0xed, (byte) 0x04, (byte) 0xc8, (byte) 0xd4, (byte) 0x5b, (byte) 0x80, (byte) 0x2d, (byte) 0x05, (byte) 0xc8, (byte) 0xb8, (byte) 0x5b, (byte) 0x80, (byte) 0x76, (byte) 0x05, (byte) 0xc8, (byte) 0x38, (byte) 0x9c, (byte) 0x80, (byte) 0x1e, (byte) 0x05, (byte) 0xc8, (byte) 0x50, (byte) 0xa0, (byte) 0x80, (byte) 0xa7, (byte) 0x04, (byte) 0xc8, (byte) 0xa4, (byte) 0x60, (byte) 0x80, (byte) 0xbd, (byte) 0x04, (byte) 0xc8, (byte) 0xe0, (byte) 0x5b, (byte) 0x80, (byte) 0x96, (byte) 0x04, (byte) 0xc8, (byte) 0xf0, (byte) 0x9c, (byte) 0x80, (byte) 0x4f, (byte) 0x04, (byte) 0xc8, (byte) 0xcc, (byte) 0x9e, (byte) 0x80, (byte) 0xfe, (byte) 0x03, (byte) 0xc8, (byte) 0xd4, (byte) 0x5c, (byte) 0x80, (byte) 0xc5, (byte) 0x03, (byte) 0xc8, (byte) 0x78, (byte) 0x9c, (byte) 0x80, (byte) 0xae, (byte) 0x03, (byte) 0xc8, (byte) 0x2c, (byte) 0x9c, (byte) 0x80, (byte) 0xb4, (byte) 0x03, (byte) 0xc8, (byte) 0x08, (byte) 0x5b, (byte) 0x80, (byte) 0xc6, (byte) 0x03, (byte) 0xc8, (byte) 0x44, (byte) 0x5a, (byte) 0x80, (byte) 0xfc, (byte) 0x03, (byte) 0xc8, (byte) 0x80, (byte) 0x9b, (byte) 0x80, (byte) 0x66, (byte) 0x04, (byte) 0xc8, (byte) 0xec, (byte) 0x9a, (byte) 0x80, (byte) 0xcb, (byte) 0x04, (byte) 0xc8, (byte) 0x9c, (byte) 0x5a, (byte) 0x80, (byte) 0x0c, (byte) 0x05, (byte) 0xc8, (byte) 0x4c, (byte) 0x5a, (byte) 0x80, (byte) 0x1b, (byte) 0x05, (byte) 0xc8, (byte) 0x7c, (byte) 0x9a, (byte) 0x80, (byte) 0x33, (byte) 0x05, (byte) 0xc8, (byte) 0x64, (byte) 0x9a, (byte) 0x80, (byte) 0x25, (byte) 0x05, (byte) 0xc8, (byte) 0x74, (byte) 0x5a, (byte) 0x80, (byte) 0x41, (byte) 0x05, (byte) 0xc8, (byte) 0xac, (byte) 0x59, (byte) 0x80, (byte) 0x28, (byte) 0x40, (byte) 0x00, (byte) 0x00, (byte) 0xe8, (byte) 0x50, (byte) 0x00, (byte) 0x01, (byte) 0x3b, (byte) 0x05, (byte) 0x15, (byte) 0x51, (byte) 0x14, (byte) 0x07, (byte) 0x96, (byte) 0x80, (byte) 0x5a, (byte) 0x00, (byte) 0xed, (byte) 0xa6, (byte) 0x06, (byte) 0x3c, (byte) 0x1a, (byte) 0xc8, (byte) 0x04, (byte) 0x04, (byte) 0x7a, (byte) 0x6e, (byte) 0x9e, (byte) 0x42, (byte) 0x21, (byte) 0x83, (byte) 0xf2, (byte) 0x90, (byte) 0x07, (byte) 0x00, (byte) 0x06, (byte) 0x08, (byte) 0x02, (byte) 0x24, (byte) 0x0c, (byte) 0x43, (byte) 0x17, (byte) 0x3c};
-            onNfcReadingFinished(NfcVReaderTask.processRawData(DEBUG_SENSOR_TAG_ID, data));
+            new ReadingIngestTask(DEBUG_SENSOR_TAG_ID, data).execute();
             return true;
 
         } else if (id == R.id.action_debug_not_ready) {
             // sensor not ready yet
             byte[] data = {(byte) 0x63, (byte) 0x3b, (byte) 0x20, (byte) 0x12, (byte) 0x03, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x49, (byte) 0x2e, (byte) 0x0b, (byte) 0x00, (byte) 0x11, (byte) 0x9e, (byte) 0x80, (byte) 0x52, (byte) 0x61, (byte) 0x00, (byte) 0xa4, (byte) 0x88, (byte) 0x80, (byte) 0x66, (byte) 0x60, (byte) 0x80, (byte) 0xbb, (byte) 0x84, (byte) 0x80, (byte) 0xba, (byte) 0x9f, (byte) 0x80, (byte) 0xa3, (byte) 0x03, (byte) 0xc8, (byte) 0x9c, (byte) 0x9f, (byte) 0x80, (byte) 0x8b, (byte) 0x03, (byte) 0xc8, (byte) 0x44, (byte) 0x9f, (byte) 0x80, (byte) 0xb7, (byte) 0x03, (byte) 0x88, (byte) 0x02, (byte) 0x9f, (byte) 0x80, (byte) 0xee, (byte) 0x03, (byte) 0xc8, (byte) 0x0c, (byte) 0x9e, (byte) 0x80, (byte) 0x0e, (byte) 0x04, (byte) 0xc8, (byte) 0x9c, (byte) 0x9d, (byte) 0x80, (byte) 0x1e, (byte) 0x04, (byte) 0xc8, (byte) 0xf8, (byte) 0x9d, (byte) 0x80, (byte) 0x2e, (byte) 0x04, (byte) 0xc8, (byte) 0x2c, (byte) 0x9e, (byte) 0x80, (byte) 0x3b, (byte) 0x04, (byte) 0xc8, (byte) 0x3c, (byte) 0xde, (byte) 0x80, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x0c, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x12, (byte) 0xdb, (byte) 0x00, (byte) 0x01, (byte) 0x3b, (byte) 0x05, (byte) 0xd1, (byte) 0x51, (byte) 0x14, (byte) 0x07, (byte) 0x96, (byte) 0x80, (byte) 0x5a, (byte) 0x00, (byte) 0xed, (byte) 0xa6, (byte) 0x02, (byte) 0x70, (byte) 0x1a, (byte) 0xc8, (byte) 0x04, (byte) 0x54, (byte) 0xd9, (byte) 0x66, (byte) 0x9e, (byte) 0x42, (byte) 0x21, (byte) 0x83, (byte) 0xf2, (byte) 0x90, (byte) 0x07, (byte) 0x00, (byte) 0x06, (byte) 0x08, (byte) 0x02, (byte) 0x24, (byte) 0x0c, (byte) 0x43, (byte) 0x17, (byte) 0x3c};
-            onShowScanData(NfcVReaderTask.processRawData(DEBUG_SENSOR_TAG_ID, data));
+            new ReadingIngestTask(DEBUG_SENSOR_TAG_ID, data).execute();
             return true;
 
         } else if (id == R.id.action_debug_export_data) {
@@ -337,6 +360,18 @@ public class MainActivity extends AppCompatActivity implements LogFragment.OnSca
                     gson.toJson(readingData, ReadingData.class, writer);
                 }
                 writer.endArray();
+                // one value per time, overlapping sensors merged
+                writer.name("glucoseTimeline");
+                writer.beginArray();
+                for (TimelinePoint point : SensorMerge.getMergedTimeline(mRealmProcessedData)) {
+                    writer.beginObject();
+                    writer.name("sensorId").value(point.getSensorId());
+                    writer.name("date").value(point.getDate());
+                    writer.name("glucose").value(point.getGlucoseData().glucose(false));
+                    writer.name("isTrendData").value(point.isTrendData());
+                    writer.endObject();
+                }
+                writer.endArray();
                 writer.endObject();
                 writer.flush();
                 writer.close();
@@ -361,40 +396,44 @@ public class MainActivity extends AppCompatActivity implements LogFragment.OnSca
             return true;
 
         } else if (id == R.id.action_reparse_raw_data) {
-            // Delete complete Realm with processed data and parse raw data again
-
-            // close Realm instance
-            mRealmProcessedData.close();
-
-            // destroy log fragment to close its Realm instance
-            Fragment logFragment = mSectionsPagerAdapter.getRegisteredFragment(R.integer.viewpager_page_fragment_log);
-            getSupportFragmentManager().beginTransaction().remove(logFragment).commitNow();
-
-            // delete Realm file
-            Realm.deleteRealm(realmConfigProcessedData);
-
-            // create new Realm instance
-            mRealmProcessedData = Realm.getInstance(realmConfigProcessedData);
-
-            // reparse raw data into new Realm
-            mRealmProcessedData.beginTransaction();
-            for (RawTagData rawTagData : mRealmRawData.where(RawTagData.class)
-                    .sort(RawTagData.DATE, Sort.ASCENDING).findAll()) {
-                mRealmProcessedData.copyToRealmOrUpdate(new ReadingData(rawTagData));
-            }
-            mRealmProcessedData.commitTransaction();
+            // delete the processed data and parse the raw data again, in order with the other writes
+            // of the processed data and off the GUI thread, the log and plots update once it is published
+            IngestWriter.getInstance().submitTask(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    OpenLibre.reparseRawData();
+                    return null;
+                }
+            });
             return true;
 
         } else if (id == R.id.action_delete_debug_data) {
-            mRealmRawData.beginTransaction();
-            mRealmRawData.where(RawTagData.class).contains(RawTagData.ID, DEBUG_SENSOR_TAG_ID).findAll().deleteAllFromRealm();
-            mRealmRawData.commitTransaction();
-
-            mRealmProcessedData.beginTransaction();
-            mRealmProcessedData.where(ReadingData.class).contains(ReadingData.ID, DEBUG_SENSOR_TAG_ID).findAll().deleteAllFromRealm();
-            mRealmProcessedData.where(GlucoseData.class).contains(GlucoseData.ID, DEBUG_SENSOR_TAG_ID).findAll().deleteAllFromRealm();
-            mRealmProcessedData.where(SensorData.class).contains(SensorData.ID, DEBUG_SENSOR_TAG_ID).findAll().deleteAllFromRealm();
-            mRealmProcessedData.commitTransaction();
+            IngestWriter.getInstance().submitTask(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    Realm realmRawData = RealmProvider.acquire(realmConfigRawData);
+                    Realm realmProcessedData = RealmProvider.acquire(realmConfigProcessedData);
+                    try {
+                        realmRawData.beginTransaction();
+                        realmRawData.where(RawTagData.class).contains(RawTagData.ID, DEBUG_SENSOR_TAG_ID).findAll().deleteAllFromRealm();
+                        realmRawData.commitTransaction();
+
+                        realmProcessedData.beginTransaction();
+                        ProcessedDataQuery.deleteSensor(realmProcessedData, DEBUG_SENSOR_TAG_ID);
+                        realmProcessedData.commitTransaction();
+                    } finally {
+                        if (realmRawData.isInTransaction()) {
+                            realmRawData.cancelTransaction();
+                        }
+                        if (realmProcessedData.isInTransaction()) {
+                            realmProcessedData.cancelTransaction();
+                        }
+                        RealmProvider.release(realmConfigProcessedData);
+                        RealmProvider.release(realmConfigRawData);
+                    }
+                    return null;
+                }
+            });
             return true;
 
         }
@@ -402,26 +441,24 @@ public class MainActivity extends AppCompatActivity implements LogFragment.OnSca
     }
 
 
-    public void onNfcReadingFinished(ReadingData readingData) {
-        mLastScanTime = new Date().getTime();
-        onShowScanData(readingData);
-        //TODO Uncomment
-        CloudStoreSynchronization.getInstance().startTriggeredUpload(getApplicationContext());
-        new SendMessageTask(getPushMessage(readingData), OpenLibre.userProfile.getTokens(), null).execute();
+    @Override
+    public void onReading(ReadingSnapshot readingSnapshot) {
+        // upload and push messages subscribe on their own
+        if (readingSnapshot.getSource() == ReadingSnapshot.Source.SCAN) {
+            showReading(readingSnapshot.getReadingId());
+        }
     }
 
-    private PushMessage getPushMessage(ReadingData readingData) {
-
-        PredictionData predictedGlucose = new PredictionData(readingData.getTrend());
-
-        PushMessage message = new PushMessage(
-                readingData.getDate(),
-                readingData.getTrend().last().glucose(),
-                predictedGlucose.glucoseData.glucose(),
-                predictedGlucose.glucoseSlopeRaw
-        );
-
-        return message;
+    private void showReading(String readingId) {
+        // the reading was committed on another thread, make sure this Realm already sees it
+        mRealmProcessedData.refresh();
+        ReadingData readingData = mRealmProcessedData.where(ReadingData.class)
+                .equalTo(ReadingData.ID, readingId)
+                .findFirst();
+        if (readingData != null) {
+            mLastScanTime = new Date().getTime();
+            onShowScanData(readingData);
+        }
     }
 
     @Override
@@ -432,18 +469,6 @@ public class MainActivity extends AppCompatActivity implements LogFragment.OnSca
     }
 
 
-    private void startContinuousSensorReadingTimer() {
-        Timer continuousSensorReadingTimer = new Timer();
-        mainActivity = this;
-        TimerTask continuousSensorReadingTask = new TimerTask() {
-            @Override
-            public void run() {
-                new NfcVReaderTask(mainActivity).execute(mLastNfcTag);
-            }
-        };
-        continuousSensorReadingTimer.schedule(continuousSensorReadingTask, 0L, TimeUnit.SECONDS.toMillis(60L));
-    }
-
     @Override
     protected void onNewIntent(Intent data) {
         resolveIntent(data);
@@ -462,7 +487,8 @@ public class MainActivity extends AppCompatActivity implements LogFragment.OnSca
             long now = new Date().getTime();
 
             if (mContinuousSensorReadingFlag) {
-                startContinuousSensorReadingTimer();
+                // also hands a new tag to an already running service
+                ContinuousReadingService.start(this, mLastNfcTag);
 
             } else if (now - mLastScanTime > 5000) {
                 DataPlotFragment dataPlotFragment = (DataPlotFragment)
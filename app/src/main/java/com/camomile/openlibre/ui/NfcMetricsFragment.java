@@ -0,0 +1,74 @@
+package com.camomile.openlibre.ui;
+
+
+import android.app.Dialog;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.v4.app.DialogFragment;
+import android.support.v7.app.AlertDialog;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.camomile.openlibre.R;
+import com.camomile.openlibre.service.NfcMetrics;
+
+import java.io.File;
+import java.io.IOException;
+
+import static com.camomile.openlibre.OpenLibre.openLibreDataPath;
+
+public class NfcMetricsFragment extends DialogFragment {
+    private static final String LOG_ID = "OpenLibre::" + NfcMetricsFragment.class.getSimpleName();
+
+    public NfcMetricsFragment() {
+        // Required empty public constructor
+    }
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState)
+    {
+        final NfcMetrics nfcMetrics = NfcMetrics.getInstance(getActivity());
+        View view = getActivity().getLayoutInflater().inflate(R.layout.fragment_nfc_metrics, null);
+        ((TextView) view.findViewById(R.id.tv_nfc_metrics)).setText(nfcMetrics.format());
+
+        AlertDialog.Builder alertDialogBuilder = new AlertDialog.Builder(getActivity());
+        alertDialogBuilder.setView(view);
+        alertDialogBuilder.setTitle(getResources().getString(R.string.title_nfc_metrics));
+        alertDialogBuilder.setPositiveButton(R.string.ok, new DialogInterface.OnClickListener()
+        {
+            @Override
+            public void onClick(DialogInterface dialog, int which)
+            {
+                dialog.dismiss();
+            }
+        });
+        alertDialogBuilder.setNeutralButton(R.string.export_data, new DialogInterface.OnClickListener()
+        {
+            @Override
+            public void onClick(DialogInterface dialog, int which)
+            {
+                File file = new File(openLibreDataPath, "openlibre-nfc-metrics.json");
+                try {
+                    nfcMetrics.export(file);
+                    Toast.makeText(getActivity(), getResources().getString(R.string.nfc_metrics_exported, file.getPath()), Toast.LENGTH_LONG).show();
+                } catch (IOException e) {
+                    Log.e(LOG_ID, "Could not export NFC metrics: " + e.toString());
+                }
+            }
+        });
+        alertDialogBuilder.setNegativeButton(R.string.nfc_metrics_reset, new DialogInterface.OnClickListener()
+        {
+            @Override
+            public void onClick(DialogInterface dialog, int which)
+            {
+                nfcMetrics.clear();
+            }
+        });
+
+        return alertDialogBuilder.create();
+    }
+}
@@ -13,13 +13,18 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.camomile.openlibre.model.AlgorithmUtil;
+import com.camomile.openlibre.model.GlucoseData;
+import com.camomile.openlibre.model.SensorAccuracy;
 import com.camomile.openlibre.model.SensorData;
+import com.camomile.openlibre.service.SensorAccuracyTask;
 
 import java.text.DateFormat;
 import java.util.Date;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
 import com.camomile.openlibre.R;
+import com.camomile.openlibre.RealmProvider;
 import io.realm.Realm;
 import io.realm.RealmResults;
 import io.realm.Sort;
@@ -38,8 +43,8 @@ public class SensorStatusFragment extends DialogFragment {
         return fragment;
     }
 
-    public void setupUi(View view) {
-        Realm realmProcessedData = Realm.getInstance(realmConfigProcessedData);
+    public void setupUi(final View view) {
+        Realm realmProcessedData = RealmProvider.acquire(realmConfigProcessedData);
         RealmResults<SensorData> sensorDataResults = realmProcessedData.where(SensorData.class).
                 sort(SensorData.START_DATE, Sort.DESCENDING).findAll();
 
@@ -47,12 +52,14 @@ public class SensorStatusFragment extends DialogFragment {
         TextView sensorStartDate = (TextView) view.findViewById(R.id.tv_sensor_start_date_value);
         TextView sensorEndsIn = (TextView) view.findViewById(R.id.tv_sensor_ends_in_value);
 
+        String latestSensorId = null;
         if (sensorDataResults.size() == 0) {
             sensorId.setText(getResources().getString(R.string.no_sensor_registered));
             sensorStartDate.setText("");
             sensorEndsIn.setText("");
         } else {
             SensorData sensorData = sensorDataResults.first();
+            latestSensorId = sensorData.getId();
             sensorId.setText(sensorData.getTagId());
             DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT);
             sensorStartDate.setText(dateFormat.format(new Date(sensorData.getStartDate())));
@@ -63,7 +70,51 @@ public class SensorStatusFragment extends DialogFragment {
                 sensorEndsIn.setText(getResources().getString(R.string.sensor_expired));
             }
         }
-        realmProcessedData.close();
+        showAccuracy(view, realmProcessedData, latestSensorId);
+        RealmProvider.release(realmConfigProcessedData);
+
+        if (latestSensorId != null) {
+            // the cached accuracy is shown right away and updated, if it was outdated
+            final String accuracySensorId = latestSensorId;
+            new SensorAccuracyTask(new SensorAccuracyTask.Listener() {
+                @Override
+                public void onSensorAccuracyUpdated() {
+                    if (isAdded()) {
+                        Realm realmProcessedData = RealmProvider.acquire(realmConfigProcessedData);
+                        showAccuracy(view, realmProcessedData, accuracySensorId);
+                        RealmProvider.release(realmConfigProcessedData);
+                    }
+                }
+            }).execute();
+        }
+    }
+
+    private void showAccuracy(View view, Realm realmProcessedData, String sensorId) {
+        TextView accuracy = (TextView) view.findViewById(R.id.tv_sensor_accuracy_value);
+        TextView clarkeZones = (TextView) view.findViewById(R.id.tv_sensor_clarke_zones_value);
+
+        SensorAccuracy sensorAccuracy = sensorId == null ? null :
+                realmProcessedData.where(SensorAccuracy.class).equalTo(SensorAccuracy.SENSOR_ID, sensorId).findFirst();
+        if (sensorAccuracy == null) {
+            // not computed yet
+            accuracy.setText("");
+            clarkeZones.setText("");
+        } else if (sensorAccuracy.getNumPairs() == 0) {
+            accuracy.setText(getResources().getString(R.string.sensor_accuracy_no_data));
+            clarkeZones.setText("");
+        } else {
+            accuracy.setText(String.format(Locale.getDefault(), getResources().getString(R.string.sensor_accuracy_value),
+                    sensorAccuracy.getMard(),
+                    GlucoseData.formatValue(GlucoseData.convertGlucoseMGDLToDisplayUnit(sensorAccuracy.getBias())),
+                    GlucoseData.getDisplayUnit(),
+                    sensorAccuracy.getNumPairs()));
+            clarkeZones.setText(String.format(Locale.getDefault(), getResources().getString(R.string.sensor_clarke_zones_value),
+                    sensorAccuracy.getClarkeZonePercentage(0),
+                    sensorAccuracy.getClarkeZonePercentage(1),
+                    sensorAccuracy.getClarkeZonePercentage(2),
+                    sensorAccuracy.getClarkeZonePercentage(3),
+                    sensorAccuracy.getClarkeZonePercentage(4)));
+        }
     }
 
     @Override
@@ -6,7 +6,12 @@ import android.os.Bundle;
 import android.preference.PreferenceManager;
 
 import com.camomile.openlibre.model.GlucoseData;
+import com.camomile.openlibre.service.IngestWriter;
 
+import static com.camomile.openlibre.OpenLibre.ALARM_HIGH;
+import static com.camomile.openlibre.OpenLibre.ALARM_LOW;
+import static com.camomile.openlibre.OpenLibre.ALARM_RATE_OF_CHANGE;
+import static com.camomile.openlibre.OpenLibre.ALARM_URGENT_LOW;
 import static com.camomile.openlibre.OpenLibre.GLUCOSE_TARGET_MAX;
 import static com.camomile.openlibre.OpenLibre.GLUCOSE_TARGET_MIN;
 import static com.camomile.openlibre.OpenLibre.GLUCOSE_UNIT_IS_MMOL;
@@ -35,14 +40,25 @@ public class SettingsActivity extends Activity implements SharedPreferences.OnSh
             if (GLUCOSE_UNIT_IS_MMOL) {
                 editor.putString("pref_glucose_target_min", Float.toString(GlucoseData.convertGlucoseMGDLToMMOL(GLUCOSE_TARGET_MIN)));
                 editor.putString("pref_glucose_target_max", Float.toString(GlucoseData.convertGlucoseMGDLToMMOL(GLUCOSE_TARGET_MAX)));
+                editor.putString("pref_alarm_urgent_low", Float.toString(GlucoseData.convertGlucoseMGDLToMMOL(ALARM_URGENT_LOW)));
+                editor.putString("pref_alarm_low", Float.toString(GlucoseData.convertGlucoseMGDLToMMOL(ALARM_LOW)));
+                editor.putString("pref_alarm_high", Float.toString(GlucoseData.convertGlucoseMGDLToMMOL(ALARM_HIGH)));
+                editor.putString("pref_alarm_rate_of_change", Float.toString(GlucoseData.convertGlucoseMGDLToMMOL(ALARM_RATE_OF_CHANGE)));
             } else {
                 editor.putString("pref_glucose_target_min", Float.toString(GlucoseData.convertGlucoseMMOLToMGDL(GLUCOSE_TARGET_MIN)));
                 editor.putString("pref_glucose_target_max", Float.toString(GlucoseData.convertGlucoseMMOLToMGDL(GLUCOSE_TARGET_MAX)));
+                editor.putString("pref_alarm_urgent_low", Float.toString(GlucoseData.convertGlucoseMMOLToMGDL(ALARM_URGENT_LOW)));
+                editor.putString("pref_alarm_low", Float.toString(GlucoseData.convertGlucoseMMOLToMGDL(ALARM_LOW)));
+                editor.putString("pref_alarm_high", Float.toString(GlucoseData.convertGlucoseMMOLToMGDL(ALARM_HIGH)));
+                editor.putString("pref_alarm_rate_of_change", Float.toString(GlucoseData.convertGlucoseMMOLToMGDL(ALARM_RATE_OF_CHANGE)));
             }
             editor.apply();
             refreshApplicationSettings(settings);
-        }
-        if (key.equals("pref_glucose_target_min") || key.equals("pref_glucose_target_max")) {
+        } else if (key.equals("pref_sensor_overlap_preference")) {
+            refreshApplicationSettings(settings);
+            // choose the preferred sensor of every overlap window again, on the writer thread of the processed data
+            IngestWriter.getInstance().updateSensorOverlaps();
+        } else if (key.startsWith("pref_")) {
             refreshApplicationSettings(settings);
         }
     }
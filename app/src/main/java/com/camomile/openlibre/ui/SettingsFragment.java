@@ -4,6 +4,7 @@ import android.os.Bundle;
 import android.preference.PreferenceFragment;
 
 import com.camomile.openlibre.R;
+import com.camomile.openlibre.RealmCompaction;
 
 public class SettingsFragment extends PreferenceFragment {
     @Override
@@ -12,5 +13,8 @@ public class SettingsFragment extends PreferenceFragment {
 
         // Load the preferences from an XML resource
         addPreferencesFromResource(R.xml.preferences);
+
+        // show the results of the last database compaction
+        findPreference("pref_realm_compaction").setSummary(RealmCompaction.format(getActivity()));
     }
 }
@@ -0,0 +1,115 @@
+package com.camomile.openlibre.ui;
+
+
+import android.app.Dialog;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.v4.app.DialogFragment;
+import android.support.v7.app.AlertDialog;
+import android.view.View;
+import android.widget.TextView;
+
+import com.camomile.openlibre.R;
+import com.camomile.openlibre.RealmProvider;
+import com.camomile.openlibre.model.GlucoseData;
+import com.camomile.openlibre.model.GlucoseStatistics;
+
+import java.util.Locale;
+
+import io.realm.Realm;
+
+import static com.camomile.openlibre.OpenLibre.realmConfigProcessedData;
+
+public class StatisticsFragment extends DialogFragment {
+    private static final int[] periodsInDays = {7, 14, 30, 90};
+
+    public StatisticsFragment() {
+        // Required empty public constructor
+    }
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState)
+    {
+        View view = getActivity().getLayoutInflater().inflate(R.layout.fragment_statistics, null);
+        ((TextView) view.findViewById(R.id.tv_statistics)).setText(formatStatistics());
+
+        AlertDialog.Builder alertDialogBuilder = new AlertDialog.Builder(getActivity());
+        alertDialogBuilder.setView(view);
+        alertDialogBuilder.setTitle(getResources().getString(R.string.title_statistics));
+        alertDialogBuilder.setPositiveButton(R.string.ok, new DialogInterface.OnClickListener()
+        {
+            @Override
+            public void onClick(DialogInterface dialog, int which)
+            {
+                dialog.dismiss();
+            }
+        });
+
+        return alertDialogBuilder.create();
+    }
+
+    private String formatStatistics() {
+        GlucoseStatistics.Summary[] summaries = new GlucoseStatistics.Summary[periodsInDays.length];
+        Realm realmProcessedData = RealmProvider.acquire(realmConfigProcessedData);
+        try {
+            for (int i = 0; i < periodsInDays.length; i++) {
+                summaries[i] = GlucoseStatistics.getSummary(realmProcessedData, periodsInDays[i]);
+            }
+        } finally {
+            RealmProvider.release(realmConfigProcessedData);
+        }
+        if (summaries[summaries.length - 1].isEmpty()) {
+            return getResources().getString(R.string.statistics_no_data);
+        }
+
+        int numPeriods = summaries.length;
+        String[] days = new String[numPeriods];
+        String[] mean = new String[numPeriods];
+        String[] gmi = new String[numPeriods];
+        String[] cv = new String[numPeriods];
+        String[] coverage = new String[numPeriods];
+        String[][] ranges = new String[GlucoseStatistics.Range.values().length][numPeriods];
+        for (int i = 0; i < numPeriods; i++) {
+            GlucoseStatistics.Summary summary = summaries[i];
+            days[i] = Integer.toString(summary.getDays());
+            if (summary.isEmpty()) {
+                mean[i] = gmi[i] = cv[i] = coverage[i] = "-";
+                for (String[] range : ranges) {
+                    range[i] = "-";
+                }
+                continue;
+            }
+            mean[i] = GlucoseData.formatValue(GlucoseData.convertGlucoseMGDLToDisplayUnit((float) summary.getMean()));
+            gmi[i] = String.format(Locale.getDefault(), "%.1f", summary.getGlucoseManagementIndicator());
+            cv[i] = String.format(Locale.getDefault(), "%.0f", summary.getCoefficientOfVariation());
+            coverage[i] = String.format(Locale.getDefault(), "%.0f", summary.getCoverage());
+            for (GlucoseStatistics.Range range : GlucoseStatistics.Range.values()) {
+                ranges[range.ordinal()][i] = String.format(Locale.getDefault(), "%.0f", summary.getPercentage(range));
+            }
+        }
+
+        StringBuilder builder = new StringBuilder();
+        appendRow(builder, getResources().getString(R.string.statistics_days), days);
+        appendRow(builder, getResources().getString(R.string.statistics_mean, GlucoseData.getDisplayUnit()), mean);
+        appendRow(builder, getResources().getString(R.string.statistics_gmi), gmi);
+        appendRow(builder, getResources().getString(R.string.statistics_cv), cv);
+        appendRow(builder, getResources().getString(R.string.statistics_coverage), coverage);
+        builder.append("\n").append(getResources().getString(R.string.statistics_ranges)).append("\n");
+        appendRow(builder, "> 250", ranges[GlucoseStatistics.Range.VERY_HIGH.ordinal()]);
+        appendRow(builder, "181 - 250", ranges[GlucoseStatistics.Range.HIGH.ordinal()]);
+        appendRow(builder, "70 - 180", ranges[GlucoseStatistics.Range.IN_RANGE.ordinal()]);
+        appendRow(builder, "54 - 69", ranges[GlucoseStatistics.Range.LOW.ordinal()]);
+        appendRow(builder, "< 54", ranges[GlucoseStatistics.Range.VERY_LOW.ordinal()]);
+        return builder.toString();
+    }
+
+    private static void appendRow(StringBuilder builder, String label, String[] values) {
+        builder.append(String.format(Locale.US, "%-14s", label));
+        for (String value : values) {
+            builder.append(String.format(Locale.US, "%6s", value));
+        }
+        builder.append("\n");
+    }
+}
@@ -0,0 +1,95 @@
+package com.camomile.openlibre.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryAlignerTest {
+    private static final int maxShift = 32;
+    private static final int numValues = 32;
+    private static final int numPreviousValues = numValues + 2 * maxShift;
+
+    // raw levels of a slowly rising curve, no two slots have the same value
+    private static int level(int previousSlot) {
+        return 1000 + 3 * previousSlot;
+    }
+
+    // new values as read at the given shift, values[i] belongs to previous slot i + maxShift + shift
+    private static int[] readValues(int shift) {
+        int[] values = new int[numValues];
+        for (int i = 0; i < numValues; i++) {
+            values[i] = level(i + maxShift + shift);
+        }
+        return values;
+    }
+
+    private static int[] storeValues(int firstSlot, int lastSlot) {
+        int[] previousValues = new int[numPreviousValues];
+        for (int slot = firstSlot; slot <= lastSlot; slot++) {
+            previousValues[slot] = level(slot);
+        }
+        return previousValues;
+    }
+
+    // values[i] matches previousValues[i + maxShift + shift] by chance for the first numValuesEqual values
+    private static void addCoincidences(int[] values, int[] previousValues, int shift, int numValuesEqual) {
+        for (int i = 0; i < numValuesEqual; i++) {
+            previousValues[i + maxShift + shift] = values[i];
+        }
+    }
+
+    private static HistoryAligner.Alignment align(int[] values, int[] previousValues) {
+        return HistoryAligner.align(values, numValues, previousValues, numPreviousValues, maxShift);
+    }
+
+    @Test
+    public void keepsAgesOfMatchingValues() {
+        HistoryAligner.Alignment alignment = align(readValues(0), storeValues(20, 60));
+
+        assertTrue(alignment.isAligned());
+        assertEquals(0, alignment.shift);
+        assertEquals(1, alignment.confidence, 0);
+    }
+
+    @Test
+    public void prefersSmallShiftWithWrongValueOverDistantCoincidence() {
+        int[] values = readValues(1);
+        values[10] += 1;
+        int[] previousValues = storeValues(33, 64);
+        addCoincidences(values, previousValues, -20, 4);
+
+        HistoryAligner.Alignment alignment = align(values, previousValues);
+
+        assertTrue(alignment.isAligned());
+        assertEquals(1, alignment.shift);
+        assertEquals(numValues - 1, alignment.overlap);
+    }
+
+    @Test
+    public void ignoresDistantCoincidenceIfNoShiftFits() {
+        int[] values = readValues(0);
+        for (int i = 0; i < numValues; i++) {
+            values[i] += 1;
+        }
+        int[] previousValues = storeValues(31, 64);
+        addCoincidences(values, previousValues, -20, 4);
+
+        assertFalse(align(values, previousValues).isAligned());
+    }
+
+    @Test
+    public void findsDistantShiftConfirmedByMostValues() {
+        HistoryAligner.Alignment alignment = align(readValues(10), storeValues(30, 80));
+
+        assertTrue(alignment.isAligned());
+        assertEquals(10, alignment.shift);
+        assertEquals(numValues, alignment.overlap);
+    }
+
+    @Test
+    public void doesNotAlignWithoutStoredValues() {
+        assertFalse(align(readValues(0), new int[numPreviousValues]).isAligned());
+    }
+}
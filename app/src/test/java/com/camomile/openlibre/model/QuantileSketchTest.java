@@ -0,0 +1,111 @@
+package com.camomile.openlibre.model;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuantileSketchTest {
+    private static final int numValues = 10000;
+    private static final double[] percentiles = {0.05, 0.25, 0.5, 0.75, 0.95};
+    // allowed error as a fraction of the value range, the tails are kept more accurately than the median
+    private static final double maxTailError = 0.002;
+    private static final double maxCenterError = 0.01;
+
+    // the values 1 to numValues in a fixed random order, so the q-quantile is q * numValues
+    private static float[] shuffledValues() {
+        float[] values = new float[numValues];
+        for (int i = 0; i < numValues; i++) {
+            values[i] = i + 1;
+        }
+        Random random = new Random(42);
+        for (int i = numValues - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            float value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+        return values;
+    }
+
+    private static QuantileSketch sketchOf(float[] values, int from, int to) {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = from; i < to; i++) {
+            sketch.add(values[i]);
+        }
+        return sketch;
+    }
+
+    private static void assertExactPercentiles(QuantileSketch sketch) {
+        for (double q : percentiles) {
+            double maxError = q <= 0.05 || q >= 0.95 ? maxTailError : maxCenterError;
+            assertEquals(q * numValues, sketch.quantile(q), maxError * numValues);
+        }
+    }
+
+    @Test
+    public void estimatesPercentilesOfKnownDistribution() {
+        QuantileSketch sketch = sketchOf(shuffledValues(), 0, numValues);
+
+        assertEquals(numValues, sketch.getCount());
+        assertExactPercentiles(sketch);
+        // the outermost centroids hold only a few values each
+        assertEquals(1, sketch.quantile(0), maxTailError * numValues);
+        assertEquals(numValues, sketch.quantile(1), maxTailError * numValues);
+    }
+
+    @Test
+    public void estimatesPercentilesAfterMerge() {
+        float[] values = shuffledValues();
+        QuantileSketch sketch = sketchOf(values, 0, numValues / 3);
+        sketch.merge(sketchOf(values, numValues / 3, numValues));
+
+        assertEquals(numValues, sketch.getCount());
+        assertExactPercentiles(sketch);
+    }
+
+    @Test
+    public void keepsPercentilesAfterSerialization() {
+        QuantileSketch sketch = sketchOf(shuffledValues(), 0, numValues);
+        ByteBuffer buffer = ByteBuffer.allocate(sketch.getSerializedSize());
+        sketch.writeTo(buffer);
+        buffer.flip();
+
+        QuantileSketch restoredSketch = QuantileSketch.readFrom(buffer);
+
+        assertEquals(0, buffer.remaining());
+        assertEquals(numValues, restoredSketch.getCount());
+        for (double q : percentiles) {
+            assertEquals(sketch.quantile(q), restoredSketch.quantile(q), 0);
+        }
+        assertExactPercentiles(restoredSketch);
+    }
+
+    @Test
+    public void estimatesPercentilesOfMergedSerializedSketches() {
+        float[] values = shuffledValues();
+        QuantileSketch sketch = new QuantileSketch();
+        // e.g. the sketches of single days merged into a profile
+        for (int day = 0; day < 10; day++) {
+            QuantileSketch daySketch = sketchOf(values, day * numValues / 10, (day + 1) * numValues / 10);
+            ByteBuffer buffer = ByteBuffer.allocate(daySketch.getSerializedSize());
+            daySketch.writeTo(buffer);
+            buffer.flip();
+            sketch.merge(QuantileSketch.readFrom(buffer));
+        }
+
+        assertEquals(numValues, sketch.getCount());
+        assertExactPercentiles(sketch);
+    }
+
+    @Test
+    public void hasNoPercentilesWithoutValues() {
+        QuantileSketch sketch = new QuantileSketch();
+
+        assertTrue(sketch.isEmpty());
+        assertTrue(Float.isNaN(sketch.quantile(0.5)));
+    }
+}
@@ -0,0 +1,84 @@
+package com.camomile.openlibre.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SensorAccuracyTest {
+    private static final int A = 0;
+    private static final int B = 1;
+    private static final int C = 2;
+    private static final int D = 3;
+    private static final int E = 4;
+
+    private static final long[] dates = {10, 20, 30};
+
+    @Test
+    public void zoneAWithinTwentyPercentOrBothLow() {
+        assertEquals(A, SensorAccuracy.getClarkeZone(100, 119));
+        assertEquals(A, SensorAccuracy.getClarkeZone(100, 81));
+        assertEquals(A, SensorAccuracy.getClarkeZone(70, 70));
+        assertEquals(A, SensorAccuracy.getClarkeZone(50, 69));
+        assertEquals(B, SensorAccuracy.getClarkeZone(100, 121));
+        assertEquals(B, SensorAccuracy.getClarkeZone(100, 79));
+    }
+
+    @Test
+    public void zoneEForOppositeTreatment() {
+        assertEquals(E, SensorAccuracy.getClarkeZone(180, 70));
+        assertEquals(E, SensorAccuracy.getClarkeZone(70, 180));
+        assertEquals(E, SensorAccuracy.getClarkeZone(58, 181));
+        assertEquals(B, SensorAccuracy.getClarkeZone(179, 70));
+    }
+
+    @Test
+    public void zoneCForOvercorrection() {
+        // upper zone from 70 to 290 mg/dl
+        assertEquals(C, SensorAccuracy.getClarkeZone(100, 210));
+        assertEquals(B, SensorAccuracy.getClarkeZone(100, 209));
+        assertEquals(C, SensorAccuracy.getClarkeZone(290, 400));
+        assertEquals(B, SensorAccuracy.getClarkeZone(291, 401));
+        // lower zone from 130 to 180 mg/dl, below 7/5 * reference - 182
+        assertEquals(C, SensorAccuracy.getClarkeZone(150, 27));
+        assertEquals(B, SensorAccuracy.getClarkeZone(150, 30));
+    }
+
+    @Test
+    public void zoneDForMissedHighOrLow() {
+        assertEquals(D, SensorAccuracy.getClarkeZone(240, 180));
+        assertEquals(D, SensorAccuracy.getClarkeZone(240, 71));
+        assertEquals(E, SensorAccuracy.getClarkeZone(240, 70));
+        assertEquals(B, SensorAccuracy.getClarkeZone(239, 180));
+        // below 175/3 mg/dl any sensor value from 70 to 180, above it from 6/5 * reference where zone A ends
+        assertEquals(D, SensorAccuracy.getClarkeZone(50, 100));
+        assertEquals(D, SensorAccuracy.getClarkeZone(58, 70.5f));
+        assertEquals(D, SensorAccuracy.getClarkeZone(60, 73));
+        assertEquals(A, SensorAccuracy.getClarkeZone(60, 71));
+    }
+
+    @Test
+    public void findsNearestDateInside() {
+        assertEquals(0, SensorAccuracy.findNearest(dates, 14));
+        assertEquals(1, SensorAccuracy.findNearest(dates, 16));
+        assertEquals(1, SensorAccuracy.findNearest(dates, 20));
+        assertEquals(2, SensorAccuracy.findNearest(dates, 26));
+    }
+
+    @Test
+    public void prefersLaterDateOnTie() {
+        assertEquals(1, SensorAccuracy.findNearest(dates, 15));
+        assertEquals(2, SensorAccuracy.findNearest(dates, 25));
+    }
+
+    @Test
+    public void findsEndsOutsideOfDates() {
+        assertEquals(0, SensorAccuracy.findNearest(dates, 5));
+        assertEquals(2, SensorAccuracy.findNearest(dates, 35));
+        assertEquals(0, SensorAccuracy.findNearest(new long[]{10}, 100));
+    }
+
+    @Test
+    public void findsFirstOfEqualDates() {
+        assertEquals(1, SensorAccuracy.findNearest(new long[]{10, 20, 20, 30}, 20));
+    }
+}
@@ -0,0 +1,296 @@
+package com.camomile.openlibre.model.prediction;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeTrue;
+
+// replays the readings of a database export (Debug > Export data) through all prediction models
+// and compares each prediction with the history values the sensor stored later, run it with
+// ./gradlew testDebugUnitTest --tests '*PredictionBacktest' -PbacktestDataset=/path/to/openlibre-db-export.json
+public class PredictionBacktest {
+    private static final String DATASET_PROPERTY = "openlibre.backtest.dataset";
+    private static final int[] horizons = {15, 30, 45, 60}; // [min]
+    private static final int maxHistoryGapInMinutes = 15; // history values are interpolated over at most one interval
+
+    private File dataset;
+
+    // subset of the exported ReadingData
+    private static class ExportedReading {
+        ExportedSensor sensor;
+        long date;
+        List<ExportedGlucose> trend;
+        List<ExportedGlucose> history;
+    }
+
+    private static class ExportedSensor {
+        String id;
+    }
+
+    private static class ExportedGlucose {
+        int ageInSensorMinutes;
+        int glucoseLevelRaw;
+        int glucoseLevelSmoothedRaw;
+    }
+
+    // all readings of one sensor, converted to arrays so the replay itself does not allocate
+    private static class SensorSeries {
+        final List<ExportedReading> readings = new ArrayList<>();
+        int[][] trendAges;
+        double[][] trendValues;
+        int[] historyAges;
+        double[] historyValues;
+
+        void prepare() {
+            Collections.sort(readings, new Comparator<ExportedReading>() {
+                @Override
+                public int compare(ExportedReading a, ExportedReading b) {
+                    return Long.compare(a.date, b.date);
+                }
+            });
+            trendAges = new int[readings.size()][];
+            trendValues = new double[readings.size()][];
+            Map<Integer, Integer> history = new HashMap<>();
+            for (int i = 0; i < readings.size(); i++) {
+                List<ExportedGlucose> trend = readings.get(i).trend;
+                trendAges[i] = new int[trend.size()];
+                trendValues[i] = new double[trend.size()];
+                for (int j = 0; j < trend.size(); j++) {
+                    trendAges[i][j] = trend.get(j).ageInSensorMinutes;
+                    // the prediction uses the smoothed values, if the export has them
+                    ExportedGlucose glucose = trend.get(j);
+                    trendValues[i][j] = glucose.glucoseLevelSmoothedRaw > 0 ? glucose.glucoseLevelSmoothedRaw : glucose.glucoseLevelRaw;
+                }
+                for (ExportedGlucose glucose : readings.get(i).history) {
+                    history.put(glucose.ageInSensorMinutes, glucose.glucoseLevelRaw);
+                }
+            }
+            List<Integer> ages = new ArrayList<>(history.keySet());
+            Collections.sort(ages);
+            historyAges = new int[ages.size()];
+            historyValues = new double[ages.size()];
+            for (int i = 0; i < ages.size(); i++) {
+                historyAges[i] = ages.get(i);
+                historyValues[i] = history.get(ages.get(i));
+            }
+        }
+
+        // linear interpolation between the neighbouring history values, NaN if there are none close enough
+        double actualValue(int ageInSensorMinutes) {
+            int index = Arrays.binarySearch(historyAges, ageInSensorMinutes);
+            if (index >= 0) {
+                return historyValues[index];
+            }
+            int next = -index - 1;
+            if (next == 0 || next == historyAges.length
+                    || historyAges[next] - historyAges[next - 1] > maxHistoryGapInMinutes) {
+                return Double.NaN;
+            }
+            double fraction = (ageInSensorMinutes - historyAges[next - 1]) / (double) (historyAges[next] - historyAges[next - 1]);
+            return historyValues[next - 1] + fraction * (historyValues[next] - historyValues[next - 1]);
+        }
+    }
+
+    private static class Result {
+        final PredictorRegistry.Model model;
+        final long[] count = new long[horizons.length];
+        final double[] sumAbsoluteError = new double[horizons.length]; // [mg/dl]
+        final double[] sumSquaredError = new double[horizons.length]; // [mg/dl^2]
+        long numPredictions = 0;
+        long durationNanos = 0;
+        long allocatedBytes = 0;
+
+        Result(PredictorRegistry.Model model) {
+            this.model = model;
+        }
+
+        void add(Result other) {
+            for (int h = 0; h < horizons.length; h++) {
+                count[h] += other.count[h];
+                sumAbsoluteError[h] += other.sumAbsoluteError[h];
+                sumSquaredError[h] += other.sumSquaredError[h];
+            }
+            numPredictions += other.numPredictions;
+            durationNanos += other.durationNanos;
+            allocatedBytes += other.allocatedBytes;
+        }
+
+        String format() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.format(Locale.US, "%s: %d predictions, %.2f us and %.1f bytes allocated per prediction\n",
+                    model, numPredictions, durationNanos / 1000.0 / Math.max(1, numPredictions),
+                    allocatedBytes / (double) Math.max(1, numPredictions)));
+            for (int h = 0; h < horizons.length; h++) {
+                builder.append(String.format(Locale.US, "  %2d min: n=%6d  MAE=%6.2f mg/dl  RMSE=%6.2f mg/dl\n",
+                        horizons[h], count[h], sumAbsoluteError[h] / Math.max(1, count[h]),
+                        Math.sqrt(sumSquaredError[h] / Math.max(1, count[h]))));
+            }
+            return builder.toString();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        String path = System.getProperty(DATASET_PROPERTY);
+        assumeTrue("no dataset given in " + DATASET_PROPERTY, path != null && !path.isEmpty());
+        dataset = new File(path);
+        assumeTrue("dataset " + dataset + " not found", dataset.isFile());
+    }
+
+    @Test
+    public void backtestAllModels() throws Exception {
+        final List<SensorSeries> sensors = readDataset(dataset);
+        assertFalse("no readings in " + dataset, sensors.isEmpty());
+
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<Result>> futures = new ArrayList<>();
+        for (final PredictorRegistry.Model model : PredictorRegistry.Model.values()) {
+            for (final SensorSeries sensor : sensors) {
+                futures.add(executor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        // warm up, so the measured run is not dominated by the JIT
+                        replay(sensor, model);
+                        return replay(sensor, model);
+                    }
+                }));
+            }
+        }
+
+        Map<PredictorRegistry.Model, Result> results = new HashMap<>();
+        for (PredictorRegistry.Model model : PredictorRegistry.Model.values()) {
+            results.put(model, new Result(model));
+        }
+        for (Future<Result> future : futures) {
+            Result result = future.get();
+            results.get(result.model).add(result);
+        }
+        executor.shutdown();
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "%s: %d sensors, %d threads\n\n", dataset.getName(), sensors.size(), numThreads));
+        for (PredictorRegistry.Model model : PredictorRegistry.Model.values()) {
+            report.append(results.get(model).format()).append("\n");
+        }
+        System.out.print(report);
+        writeReport(report.toString());
+    }
+
+    // feeds the trend of every reading into one predictor per sensor, like PredictionData does
+    private static Result replay(SensorSeries sensor, PredictorRegistry.Model model) {
+        Result result = new Result(model);
+        GlucosePredictor predictor = model.create();
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < sensor.trendAges.length; i++) {
+            int[] ages = sensor.trendAges[i];
+            if (ages.length == 0) {
+                continue;
+            }
+            for (int j = 0; j < ages.length; j++) {
+                predictor.update(ages[j], sensor.trendValues[i][j]);
+            }
+            int lastAge = ages[ages.length - 1];
+            for (int h = 0; h < horizons.length; h++) {
+                double predicted = predictor.predict(lastAge + horizons[h]);
+                double actual = sensor.actualValue(lastAge + horizons[h]);
+                if (!Double.isNaN(actual)) {
+                    double error = (predicted - actual) / 10; // raw to mg/dl
+                    result.count[h]++;
+                    result.sumAbsoluteError[h] += Math.abs(error);
+                    result.sumSquaredError[h] += error * error;
+                }
+            }
+            predictor.getSlope();
+            predictor.getConfidence();
+            result.numPredictions++;
+        }
+        result.durationNanos = System.nanoTime() - start;
+        result.allocatedBytes = Math.max(0, getAllocatedBytes() - allocatedBefore);
+        return result;
+    }
+
+    private static List<SensorSeries> readDataset(File file) throws IOException {
+        Gson gson = new Gson();
+        Map<String, SensorSeries> sensors = new HashMap<>();
+        JsonReader reader = new JsonReader(new FileReader(file));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("readingData")) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    ExportedReading reading = gson.fromJson(reader, ExportedReading.class);
+                    if (reading.sensor == null || reading.trend == null || reading.history == null) {
+                        continue;
+                    }
+                    SensorSeries sensor = sensors.get(reading.sensor.id);
+                    if (sensor == null) {
+                        sensor = new SensorSeries();
+                        sensors.put(reading.sensor.id, sensor);
+                    }
+                    sensor.readings.add(reading);
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+        for (SensorSeries sensor : sensors.values()) {
+            sensor.prepare();
+        }
+        return new ArrayList<>(sensors.values());
+    }
+
+    private void writeReport(String report) throws IOException {
+        File reportFile = new File("build/reports/prediction-backtest.txt");
+        reportFile.getParentFile().mkdirs();
+        Writer writer = new FileWriter(reportFile);
+        try {
+            writer.write(report);
+        } finally {
+            writer.close();
+        }
+    }
+
+    // bytes allocated by the current thread, only available on HotSpot based JVMs, otherwise 0
+    private static long getAllocatedBytes() {
+        try {
+            Object threadMXBean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            Method getThreadAllocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+            return (Long) getThreadAllocatedBytes.invoke(threadMXBean, Thread.currentThread().getId());
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return 0;
+        }
+    }
+}